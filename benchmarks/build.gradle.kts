@@ -0,0 +1,29 @@
+plugins {
+    id("java")
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+group = "dev.dediamondpro"
+version = "1.0-SNAPSHOT"
+
+repositories {
+    mavenCentral()
+    maven("https://maven.fabricmc.net/")
+}
+
+dependencies {
+    jmh(project(":jar-minifier"))
+    jmh(project(":loader"))
+    // Only provided by the game at runtime, so the loader doesn't pass them on
+    jmh("net.fabricmc:fabric-loader:0.14.23")
+    jmh("org.apache.logging.log4j:log4j-api:2.19.0")
+    jmh("com.google.code.gson:gson:2.10.1")
+    jmh("commons-codec:commons-codec:1.16.0")
+    jmh("org.ow2.asm:asm:9.6")
+}
+
+jmh {
+    // Allocation rate next to throughput, output sizes are reported by the benchmarks as auxiliary counters
+    profilers.add("gc")
+    resultFormat = "JSON"
+}
@@ -0,0 +1,85 @@
+package dev.dediamondpro.benchmarks;
+
+import dev.dediamondpro.jarminifier.ZipReader;
+import dev.dediamondpro.jarminifier.ZipWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing the entries of one version to an inner jar, copying them as they are compared to inflating and deflating them again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyBenchmark {
+    @Param({"1000", "5000"})
+    public int classes;
+
+    private File dir;
+    private ZipReader jar;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("omniloader-bench").toFile();
+        new CorpusGenerator(1, classes, 100, 0).generate(dir);
+        jar = new ZipReader(Objects.requireNonNull(new File(dir, "jars").listFiles())[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        jar.close();
+        CorpusGenerator.delete(dir);
+    }
+
+    @Benchmark
+    public void copyRaw(OutputSize size) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream();
+        try (ZipWriter out = new ZipWriter(counter)) {
+            for (ZipReader.Entry entry : jar.getEntries()) out.copyRaw(jar, entry);
+        }
+        size.innerJarBytes = counter.count;
+    }
+
+    @Benchmark
+    public void recompress(OutputSize size) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream();
+        try (ZipWriter out = new ZipWriter(counter)) {
+            for (ZipReader.Entry entry : jar.getEntries()) {
+                try (InputStream in = jar.getInputStream(entry)) {
+                    out.writeDeflated(entry.getName(), entry.getDosTime(), in.readAllBytes());
+                }
+            }
+        }
+        size.innerJarBytes = counter.count;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class OutputSize {
+        public long innerJarBytes;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package dev.dediamondpro.benchmarks;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates a synthetic set of jars of one mod for multiple Minecraft versions, laid out the way the minifier expects
+ * them. The same arguments always generate the same bytes, so results of different runs can be compared.
+ * <p>
+ * The first overlap percent of the classes are identical in every version. Of the other classes a third only differs
+ * in debug information, as if it was recompiled, a third changes every two versions and a third changes every version.
+ */
+public class CorpusGenerator {
+    public static final String MOD_ID = "benchmod";
+    // Fixed timestamp so the generated jars don't depend on when they were generated
+    private static final long ENTRY_TIME = 315532800000L;
+
+    private final int versions;
+    private final int classes;
+    private final int overlap;
+    private final long seed;
+
+    /**
+     * @param overlap the percentage of classes that are identical in every version
+     */
+    public CorpusGenerator(int versions, int classes, int overlap, long seed) {
+        this.versions = versions;
+        this.classes = classes;
+        this.overlap = overlap;
+        this.seed = seed;
+    }
+
+    /**
+     * Writes the jars to the jars directory in the given directory, together with the omniloader.jar the minifier embeds.
+     */
+    public void generate(File dir) throws IOException {
+        File jarsDir = new File(dir, "jars");
+        jarsDir.mkdirs();
+        for (int version = 0; version < versions; version++) {
+            try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(new File(jarsDir, MOD_ID + "-" + getMinecraftVersion(version) + ".jar"))))) {
+                writeJar(out, version);
+            }
+        }
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, "omniloader.jar"))))) {
+            write(out, "fabric.mod.json", "{\"schemaVersion\": 1, \"id\": \"omniloader0\", \"version\": \"0.1.0\"}".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public String getMinecraftVersion(int version) {
+        return "1.20." + version;
+    }
+
+    private void writeJar(ZipOutputStream out, int version) throws IOException {
+        write(out, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n".getBytes(StandardCharsets.UTF_8));
+        String apiJar = "api-" + version / 4 + ".jar";
+        String fabricModJson = "{\n" +
+                "  \"schemaVersion\": 1,\n" +
+                "  \"id\": \"" + MOD_ID + "\",\n" +
+                "  \"version\": \"1.0.0\",\n" +
+                "  \"name\": \"Benchmark Mod\",\n" +
+                "  \"environment\": \"*\",\n" +
+                "  \"entrypoints\": {\"main\": [\"dev.bench.C0\"]},\n" +
+                "  \"jars\": [{\"file\": \"META-INF/jars/common.jar\"}, {\"file\": \"META-INF/jars/" + apiJar + "\"}],\n" +
+                "  \"depends\": {\"minecraft\": \"" + getMinecraftVersion(version) + "\", \"fabricloader\": \">=0.14\"}\n" +
+                "}";
+        write(out, "fabric.mod.json", fabricModJson.getBytes(StandardCharsets.UTF_8));
+        write(out, "assets/" + MOD_ID + "/lang/en_us.json", language(version / 2));
+        for (int i = 0; i < classes; i++) {
+            write(out, "dev/bench/C" + i + ".class", generateClass(i, version));
+        }
+        write(out, "META-INF/jars/common.jar", nestedJar("common", 0));
+        write(out, "META-INF/jars/" + apiJar, nestedJar("api", version / 4));
+    }
+
+    private byte[] generateClass(int index, int version) {
+        int variant = 0;
+        int lineOffset = 0;
+        if (index >= (long) classes * overlap / 100) {
+            switch (index % 3) {
+                case 0 -> lineOffset = version;
+                case 1 -> variant = version / 2;
+                default -> variant = version;
+            }
+        }
+        Random random = new Random(seed ^ (index * 31L + variant));
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, "dev/bench/C" + index, null, "java/lang/Object", null);
+        writer.visitSource("C" + index + ".java", null);
+        int fields = 2 + random.nextInt(6);
+        for (int i = 0; i < fields; i++) {
+            writer.visitField(Opcodes.ACC_PRIVATE, "field" + i, "I", null, null).visitEnd();
+        }
+        int methods = 3 + random.nextInt(10);
+        for (int i = 0; i < methods; i++) {
+            MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "method" + i, "()Ljava/lang/String;", null, null);
+            method.visitCode();
+            Label start = new Label();
+            method.visitLabel(start);
+            method.visitLineNumber(10 + i * 5 + lineOffset, start);
+            method.visitVarInsn(Opcodes.ALOAD, 0);
+            method.visitFieldInsn(Opcodes.GETFIELD, "dev/bench/C" + index, "field" + random.nextInt(fields), "I");
+            method.visitLdcInsn(random.nextInt());
+            method.visitInsn(Opcodes.IADD);
+            method.visitInsn(Opcodes.POP);
+            method.visitLdcInsn("C" + index + ".method" + i + ":" + Long.toHexString(random.nextLong()));
+            method.visitInsn(Opcodes.ARETURN);
+            Label end = new Label();
+            method.visitLabel(end);
+            method.visitLocalVariable("this", "Ldev/bench/C" + index + ";", null, start, end, 0);
+            method.visitMaxs(0, 0);
+            method.visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private byte[] language(int variant) {
+        StringBuilder builder = new StringBuilder("{\n");
+        for (int i = 0; i < classes / 10; i++) {
+            builder.append("  \"item.").append(MOD_ID).append(".item").append(i).append("\": \"Item ").append(i).append(" (").append(variant).append(")\",\n");
+        }
+        return builder.append("  \"itemGroup.").append(MOD_ID).append("\": \"Benchmark Mod\"\n}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] nestedJar(String name, int variant) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            String id = MOD_ID + "-" + name;
+            write(out, "fabric.mod.json", ("{\"schemaVersion\": 1, \"id\": \"" + id + "\", \"version\": \"1.0." + variant + "\"}").getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < Math.max(1, classes / 20); i++) {
+                write(out, "dev/bench/" + name + "/C" + i + ".class", generateClass(i, variant));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void write(ZipOutputStream out, String name, byte[] data) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTime(ENTRY_TIME);
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+
+    /**
+     * Deletes a directory created for a benchmark, with everything in it.
+     */
+    public static void delete(File dir) throws IOException {
+        if (!dir.exists()) return;
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package dev.dediamondpro.benchmarks;
+
+import dev.dediamondpro.jarminifier.ClassNormalizer;
+import dev.dediamondpro.jarminifier.EntryIndex;
+import dev.dediamondpro.jarminifier.ZipReader;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashing of entries, both per class and for the whole index the minifier builds before partitioning.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+    @Param({"4", "16"})
+    public int versions;
+    @Param({"1000"})
+    public int classes;
+    @Param({"50"})
+    public int overlap;
+
+    private File dir;
+    private ExecutorService executor;
+    private List<ZipReader> jars;
+    private List<byte[]> classBytes;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("omniloader-bench").toFile();
+        new CorpusGenerator(versions, classes, overlap, 0).generate(dir);
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        jars = new ArrayList<>();
+        File[] files = Objects.requireNonNull(new File(dir, "jars").listFiles());
+        Arrays.sort(files);
+        for (File file : files) jars.add(new ZipReader(file));
+        classBytes = new ArrayList<>();
+        ZipReader first = jars.get(0);
+        for (ZipReader.Entry entry : first.getEntries()) {
+            if (!entry.getName().endsWith(".class")) continue;
+            try (InputStream in = first.getInputStream(entry)) {
+                classBytes.add(in.readAllBytes());
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdown();
+        for (ZipReader jar : jars) jar.close();
+        CorpusGenerator.delete(dir);
+    }
+
+    /**
+     * The hash entries are compared with by default, over the classes of one version.
+     */
+    @Benchmark
+    public void md5(Blackhole blackhole) {
+        for (byte[] bytes : classBytes) blackhole.consume(DigestUtils.md5Hex(bytes));
+    }
+
+    /**
+     * The hash used with --normalize-classes, over the classes of one version.
+     */
+    @Benchmark
+    public void normalizedHash(Blackhole blackhole) throws IOException {
+        for (byte[] bytes : classBytes) blackhole.consume(ClassNormalizer.hash(new ByteArrayInputStream(bytes)));
+    }
+
+    @Benchmark
+    public EntryIndex index() throws IOException {
+        return EntryIndex.build(jars, name -> name.startsWith("META-INF/jars/"), name -> true, (jar, entry) -> null, false, executor);
+    }
+
+    @Benchmark
+    public EntryIndex normalizedIndex() throws IOException {
+        return EntryIndex.build(jars, name -> name.startsWith("META-INF/jars/"), name -> true, (jar, entry) -> null, true, executor);
+    }
+}
@@ -0,0 +1,141 @@
+package dev.dediamondpro.benchmarks;
+
+import dev.dediamondpro.omniloader0.*;
+import net.fabricmc.loader.api.ModContainer;
+import net.fabricmc.loader.api.Version;
+import net.fabricmc.loader.api.VersionParsingException;
+import net.fabricmc.loader.api.metadata.ModOrigin;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The loader's side of a launch against a minified container: reading the schema, selecting the jars for the
+ * Minecraft version and extracting them, both into an empty directory and into one that is already up to date.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoaderBenchmark {
+    @Param({"4", "16"})
+    public int versions;
+    @Param({"1000"})
+    public int classes;
+    @Param({"50"})
+    public int overlap;
+    @Param({"", "--exploded"})
+    public String options;
+
+    private File dir;
+    private ModContainer mod;
+    private Version version;
+    private List<OmniLoaderSchema.Jar> jars;
+    private OmniLoaderSchema schema;
+    private File cachedDir;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, VersionParsingException {
+        dir = Files.createTempDirectory("omniloader-bench").toFile();
+        CorpusGenerator generator = new CorpusGenerator(versions, classes, overlap, 0);
+        generator.generate(dir);
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        File container;
+        try {
+            container = MinifierRunner.minify(dir, options, executor);
+        } finally {
+            executor.shutdown();
+        }
+        mod = modContainer(container);
+        version = Version.parse(generator.getMinecraftVersion(versions / 2));
+        try (Container opened = Container.open(mod, report())) {
+            schema = opened.getSchema();
+            jars = OmniLoader.filterJars(schema.getJars(), version, "fabric");
+            cachedDir = new File(dir, "cached");
+            opened.extract(jars, cachedDir, ExtractionCache.load(cachedDir));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        CorpusGenerator.delete(dir);
+    }
+
+    @Benchmark
+    public OmniLoaderSchema readSchema() throws IOException {
+        try (Container container = Container.open(mod, report())) {
+            return container.getSchema();
+        }
+    }
+
+    @Benchmark
+    public List<OmniLoaderSchema.Jar> filterJars() {
+        return OmniLoader.filterJars(schema.getJars(), version, "fabric");
+    }
+
+    @Benchmark
+    public List<OmniLoaderSchema.Jar> resolveVersionIndex() {
+        return schema.getVersionIndex().resolve(schema.getJars(), version, "fabric");
+    }
+
+    @Benchmark
+    public Map<OmniLoaderSchema.Jar, Container.InnerJar> extractCold(ExtractDir extractDir) throws IOException {
+        try (Container container = Container.open(mod, report())) {
+            return container.extract(jars, extractDir.dir, ExtractionCache.load(extractDir.dir));
+        }
+    }
+
+    @Benchmark
+    public Map<OmniLoaderSchema.Jar, Container.InnerJar> extractCached() throws IOException {
+        try (Container container = Container.open(mod, report())) {
+            return container.extract(jars, cachedDir, ExtractionCache.load(cachedDir));
+        }
+    }
+
+    /**
+     * An empty directory for every invocation, so every jar has to be extracted.
+     */
+    @State(Scope.Thread)
+    public static class ExtractDir {
+        private File dir;
+
+        @Setup(Level.Invocation)
+        public void setup() throws IOException {
+            dir = Files.createTempDirectory("omniloader-bench-extract").toFile();
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws IOException {
+            CorpusGenerator.delete(dir);
+        }
+    }
+
+    private static StartupReport.ModReport report() {
+        return new StartupReport("benchmark").addMod(CorpusGenerator.MOD_ID);
+    }
+
+    /**
+     * @return a mod that was loaded from the container, which is all the loader needs to know about it
+     */
+    private static ModContainer modContainer(File container) {
+        ModOrigin origin = (ModOrigin) Proxy.newProxyInstance(LoaderBenchmark.class.getClassLoader(), new Class<?>[]{ModOrigin.class}, (proxy, method, args) -> {
+            if (method.getName().equals("getPaths")) return Collections.singletonList(container.toPath());
+            throw new UnsupportedOperationException(method.getName());
+        });
+        return (ModContainer) Proxy.newProxyInstance(LoaderBenchmark.class.getClassLoader(), new Class<?>[]{ModContainer.class}, (proxy, method, args) -> {
+            if (method.getName().equals("getOrigin")) return origin;
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+}
@@ -0,0 +1,57 @@
+package dev.dediamondpro.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The minifier end to end, from the jars of every version to the container.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MinifierBenchmark {
+    @Param({"4", "16"})
+    public int versions;
+    @Param({"1000"})
+    public int classes;
+    @Param({"50", "90"})
+    public int overlap;
+    @Param({"", "--stream", "--normalize-classes", "--delta", "--stream --max-open-jars=4 --max-pending-jars=4 --memory-budget=16777216"})
+    public String options;
+
+    private File dir;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("omniloader-bench").toFile();
+        new CorpusGenerator(versions, classes, overlap, 0).generate(dir);
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdown();
+        CorpusGenerator.delete(dir);
+    }
+
+    @Benchmark
+    public void minify(OutputSize size) throws IOException {
+        size.containerBytes = MinifierRunner.minify(dir, options, executor).length();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class OutputSize {
+        public long containerBytes;
+    }
+}
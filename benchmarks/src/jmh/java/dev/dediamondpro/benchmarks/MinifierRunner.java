@@ -0,0 +1,37 @@
+package dev.dediamondpro.benchmarks;
+
+import dev.dediamondpro.jarminifier.Minifier;
+import dev.dediamondpro.jarminifier.MinifierOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+class MinifierRunner {
+
+    /**
+     * Runs the minifier on a generated corpus without its progress output, which would otherwise end up in the results.
+     *
+     * @param options options as they'd be passed on the command line, separated by spaces
+     * @return the container written by the minifier
+     */
+    static File minify(File dir, String options, ExecutorService executor) throws IOException {
+        ArrayList<String> args = new ArrayList<>();
+        if (!options.isEmpty()) args.addAll(Arrays.asList(options.split(" ")));
+        args.add("--jars-dir=" + new File(dir, "jars"));
+        args.add("--out-dir=" + new File(dir, "out"));
+        args.add("--omniloader-jar=" + new File(dir, "omniloader.jar"));
+        args.add("--output-dir=" + dir);
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            return new Minifier(MinifierOptions.parse(args.toArray(new String[0])), executor, null).minify();
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
@@ -14,8 +14,11 @@ repositories {
 dependencies {
     implementation("commons-codec:commons-codec:1.16.0")
     implementation("com.google.code.gson:gson:2.10.1")
+    implementation("org.ow2.asm:asm:9.6")
     testImplementation(platform("org.junit:junit-bom:5.9.1"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+    // Patches are decoded by the loader, so the tests check the encoder against the real decoder
+    testImplementation(project(":loader"))
 }
 
 tasks.test {
@@ -0,0 +1,129 @@
+package dev.dediamondpro.jarminifier;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Minifies every mod in a manifest in one process, so the mods share the workers and the nested jar cache instead of
+ * each paying for starting the JVM and extracting the same nested jars. A few mods are minified at the same time, so
+ * small mods that can't keep every worker busy on their own still use all of them. The manifest looks like
+ * <pre>{@code
+ * {
+ *   "mods": [
+ *     { "jarsDir": "polysprint/jars", "outDir": "polysprint/out", "outputDir": "dist", "options": ["--delta"] }
+ *   ]
+ * }
+ * }</pre>
+ * where paths are relative to the manifest, and options are added to the ones the batch was started with.
+ */
+public class BatchMinifier {
+    private static final Gson gson = new GsonBuilder().create();
+
+    /**
+     * Minifies the mods, up to {@link MinifierOptions#getBatchJobs()} at the same time, continuing with the others when
+     * one fails.
+     *
+     * @param args the options the batch was started with, which apply to every mod
+     */
+    public static void run(File manifestFile, String[] args, ExecutorService executor) throws IOException {
+        BatchManifest manifest;
+        try (Reader reader = new InputStreamReader(new FileInputStream(manifestFile), StandardCharsets.UTF_8)) {
+            manifest = gson.fromJson(reader, BatchManifest.class);
+        }
+        if (manifest == null || manifest.mods == null) throw new IOException("Batch manifest " + manifestFile + " has no mods");
+        MinifierOptions batchOptions = MinifierOptions.parse(args);
+        File cacheDir = batchOptions.getNestedJarCache();
+        boolean temporaryCache = cacheDir == null;
+        if (temporaryCache) cacheDir = Files.createTempDirectory("omniloader-nested-jars").toFile();
+        NestedJarCache nestedJarCache = new NestedJarCache(cacheDir);
+        File baseDir = manifestFile.getAbsoluteFile().getParentFile();
+        ArrayList<File> jarsDirs = new ArrayList<>();
+        ArrayList<MinifierOptions> modOptions = new ArrayList<>();
+        HashSet<File> outDirs = new HashSet<>();
+        for (BatchManifest.Mod mod : manifest.mods) {
+            if (mod.jarsDir == null) throw new IOException("Batch manifest " + manifestFile + " has a mod without a jarsDir");
+            MinifierOptions options = MinifierOptions.parse(getArgs(args, baseDir, mod));
+            // Mods are minified at the same time, so they can't share the directory inner jars are written to
+            if (!outDirs.add(options.getOutDir().getAbsoluteFile())) {
+                throw new IOException("Batch manifest " + manifestFile + " has several mods with out directory " + options.getOutDir());
+            }
+            jarsDirs.add(resolve(baseDir, mod.jarsDir));
+            modOptions.add(options);
+        }
+        // The mods run on their own threads, which only wait for the workers, so a mod never waits on a worker
+        // that is itself waiting for a free worker
+        ExecutorService jobs = Executors.newFixedThreadPool(Math.min(batchOptions.getBatchJobs(), manifest.mods.size()));
+        int failed = 0;
+        try {
+            ArrayList<Future<File>> containers = new ArrayList<>();
+            for (int i = 0; i < modOptions.size(); i++) {
+                File jarsDir = jarsDirs.get(i);
+                MinifierOptions options = modOptions.get(i);
+                containers.add(jobs.submit(() -> {
+                    System.out.println("Minifying " + jarsDir);
+                    return new Minifier(options, executor, nestedJarCache).minify();
+                }));
+            }
+            for (int i = 0; i < containers.size(); i++) {
+                try {
+                    System.out.println("Wrote " + Parallel.await(containers.get(i)));
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Failed to minify " + jarsDirs.get(i));
+                    e.printStackTrace();
+                    failed++;
+                }
+            }
+        } finally {
+            jobs.shutdownNow();
+            if (temporaryCache) {
+                for (File file : cacheDir.listFiles()) file.delete();
+                cacheDir.delete();
+            }
+        }
+        if (failed > 0) throw new IOException(failed + " of " + manifest.mods.size() + " mods failed to minify");
+    }
+
+    /**
+     * @return the options of the batch without the batch itself, followed by the paths and options of the mod
+     */
+    private static String[] getArgs(String[] args, File baseDir, BatchManifest.Mod mod) {
+        ArrayList<String> modArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--batch=")) modArgs.add(arg);
+        }
+        File jarsDir = resolve(baseDir, mod.jarsDir);
+        modArgs.add("--jars-dir=" + jarsDir);
+        // Defaults next to the jars directory, so mods don't share an out directory by accident
+        modArgs.add("--out-dir=" + (mod.outDir != null ? resolve(baseDir, mod.outDir) : new File(jarsDir.getParentFile(), "out")));
+        if (mod.omniLoaderJar != null) modArgs.add("--omniloader-jar=" + resolve(baseDir, mod.omniLoaderJar));
+        if (mod.outputDir != null) modArgs.add("--output-dir=" + resolve(baseDir, mod.outputDir));
+        if (mod.options != null) modArgs.addAll(mod.options);
+        return modArgs.toArray(new String[0]);
+    }
+
+    private static File resolve(File baseDir, String path) {
+        return baseDir.toPath().resolve(path).toFile();
+    }
+
+    private static class BatchManifest {
+        private List<Mod> mods;
+
+        private static class Mod {
+            private String jarsDir;
+            private String outDir;
+            private String omniLoaderJar;
+            private String outputDir;
+            private List<String> options;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package dev.dediamondpro.jarminifier;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Index of a previous build that is stored next to the inner jars in the out directory, so an incremental build
+ * only has to rehash the input jars that changed and rewrite the inner jars whose content changed.
+ */
+public class BuildManifest {
+    public static final String FILE_NAME = "omniloader-manifest.json";
+    private static final int MANIFEST_VERSION = 1;
+    private static final Gson gson = new GsonBuilder().create();
+
+    private final int manifestVersion;
+    private final int schemaVersion;
+    private final boolean normalizeClasses;
+    private final ArrayList<JarRecord> jars;
+    private final ArrayList<InnerJarRecord> innerJars;
+
+    public BuildManifest(int schemaVersion, boolean normalizeClasses) {
+        this.manifestVersion = MANIFEST_VERSION;
+        this.schemaVersion = schemaVersion;
+        this.normalizeClasses = normalizeClasses;
+        this.jars = new ArrayList<>();
+        this.innerJars = new ArrayList<>();
+    }
+
+    /**
+     * @return the manifest of the previous build, or null if there is none or it can't be used for the given schema version,
+     * or its entry hashes were computed with a different normalizeClasses setting
+     */
+    public static BuildManifest load(File file, int schemaVersion, boolean normalizeClasses) {
+        if (!file.isFile()) return null;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            BuildManifest manifest = gson.fromJson(reader, BuildManifest.class);
+            if (manifest == null || manifest.manifestVersion != MANIFEST_VERSION || manifest.schemaVersion != schemaVersion
+                    || manifest.normalizeClasses != normalizeClasses
+                    || manifest.jars == null || manifest.innerJars == null) {
+                System.out.println("Build manifest is outdated, doing a full rebuild");
+                return null;
+            }
+            return manifest;
+        } catch (IOException | JsonParseException e) {
+            System.err.println("Failed to read build manifest, doing a full rebuild: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void save(File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            gson.toJson(this, writer);
+        }
+    }
+
+    /**
+     * @return the record of the given input jar if its content is unchanged since the previous build, otherwise null
+     */
+    public JarRecord findUnchanged(File jar) throws IOException {
+        for (JarRecord record : jars) {
+            if (!record.name.equals(jar.getName()) || record.size != jar.length()) continue;
+            if (record.lastModified == jar.lastModified()) return record;
+            return record.digest.equals(digest(jar)) ? record : null;
+        }
+        return null;
+    }
+
+    /**
+     * @return the previously written inner jar with the given file name, if it still exists and has the given fingerprint
+     */
+    public InnerJarRecord findInnerJar(File file, String fingerprint) {
+        for (InnerJarRecord record : innerJars) {
+            if (!record.file.equals(file.getName()) || !record.fingerprint.equals(fingerprint)) continue;
+            if (file.length() != record.size || file.lastModified() != record.lastModified) return null;
+            return record;
+        }
+        return null;
+    }
+
+    public List<JarRecord> getJars() {
+        return jars;
+    }
+
+    public List<InnerJarRecord> getInnerJars() {
+        return innerJars;
+    }
+
+    public static String digest(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            return DigestUtils.sha256Hex(in);
+        }
+    }
+
+    public static class JarRecord {
+        private final String name;
+        private final long size;
+        private final long lastModified;
+        private final String digest;
+        private final HashMap<String, EntryRecord> entries;
+
+        public JarRecord(File jar, String digest, HashMap<String, EntryRecord> entries) {
+            this.name = jar.getName();
+            this.size = jar.length();
+            this.lastModified = jar.lastModified();
+            this.digest = digest;
+            this.entries = entries;
+        }
+
+        public String getDigest() {
+            return digest;
+        }
+
+        /**
+         * @return the hash recorded for the entry, or null if it wasn't hashed or has changed
+         */
+        public String getHash(ZipReader.Entry entry) {
+            EntryRecord record = entries.get(entry.getName());
+            if (record == null || record.crc != entry.getCrc() || record.size != entry.getSize()) return null;
+            return record.hash;
+        }
+    }
+
+    public static class EntryRecord {
+        private final long crc;
+        private final long size;
+        private final String hash;
+
+        public EntryRecord(ZipReader.Entry entry, String hash) {
+            this.crc = entry.getCrc();
+            this.size = entry.getSize();
+            this.hash = hash;
+        }
+    }
+
+    public static class InnerJarRecord {
+        private final String file;
+        private final String fingerprint;
+        private final long crc;
+        private final long size;
+        private final long lastModified;
+
+        public InnerJarRecord(File file, String fingerprint, long crc) {
+            this.file = file.getName();
+            this.fingerprint = fingerprint;
+            this.crc = crc;
+            this.size = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+}
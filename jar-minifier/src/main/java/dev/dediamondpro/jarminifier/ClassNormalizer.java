@@ -0,0 +1,58 @@
+package dev.dediamondpro.jarminifier;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.objectweb.asm.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Hashes classes by what they do rather than by their exact bytes, so a class that was only recompiled
+ * (with a different constant pool order or different line numbers) is still shared between versions.
+ */
+public class ClassNormalizer {
+
+    /**
+     * @return the MD5 of the class without its source file, line numbers and local variables, and with a freshly
+     * built constant pool, or of the raw bytes if it can't be parsed as a class
+     */
+    public static String hash(InputStream in) throws IOException {
+        byte[] bytes = in.readAllBytes();
+        try {
+            ClassReader reader = new ClassReader(bytes);
+            // Not passing the reader to the writer makes it build the constant pool in visiting order
+            ClassWriter writer = new ClassWriter(0);
+            reader.accept(new DebugStripper(writer), 0);
+            return DigestUtils.md5Hex(writer.toByteArray());
+        } catch (RuntimeException e) {
+            return DigestUtils.md5Hex(bytes);
+        }
+    }
+
+    /**
+     * Removes the debug information that changes when a class is recompiled. Unlike {@link ClassReader#SKIP_DEBUG} this
+     * keeps MethodParameters, since parameter names can be read through reflection.
+     */
+    private static class DebugStripper extends ClassVisitor {
+        private DebugStripper(ClassVisitor classVisitor) {
+            super(Opcodes.ASM9, classVisitor);
+        }
+
+        @Override
+        public void visitSource(String source, String debug) {
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            return new MethodVisitor(Opcodes.ASM9, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+                @Override
+                public void visitLineNumber(int line, Label start) {
+                }
+
+                @Override
+                public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package dev.dediamondpro.jarminifier;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The order classes were first loaded in at runtime, from the class-profile.json files the loader writes when class
+ * load profiling is enabled. Classes that are loaded early are put at the start of their inner jar, in the order they
+ * are loaded, and inner jars with such classes are stored at the start of the container, so starting the game reads
+ * the container mostly front to back.
+ */
+public class ClassProfile {
+    private static final Gson gson = new GsonBuilder().create();
+
+    // Position of every profiled class in the profile it was loaded first in
+    private final HashMap<String, Integer> ranks;
+
+    private ClassProfile(HashMap<String, Integer> ranks) {
+        this.ranks = ranks;
+    }
+
+    /**
+     * @param files profiles of one or more launches, for example one for every Minecraft version
+     */
+    public static ClassProfile load(List<File> files) throws IOException {
+        HashMap<String, Integer> ranks = new HashMap<>();
+        for (File file : files) {
+            Profile profile;
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                profile = gson.fromJson(reader, Profile.class);
+            } catch (JsonParseException e) {
+                throw new IOException("Failed to read class profile " + file, e);
+            }
+            if (profile == null || profile.classes == null) continue;
+            for (int i = 0; i < profile.classes.size(); i++) {
+                ranks.merge(profile.classes.get(i).name, i, Math::min);
+            }
+        }
+        return new ClassProfile(ranks);
+    }
+
+    /**
+     * Sorts a partition's entries with META-INF first, so the manifest stays the first entry, then the profiled classes
+     * in the order they were loaded in, then everything else in its original order.
+     *
+     * @return the amount of profiled classes in the partition
+     */
+    public int sort(List<Partition.Entry> entries) {
+        int profiled = 0;
+        for (Partition.Entry entry : entries) {
+            if (ranks.containsKey(entry.getEntry().getName())) profiled++;
+        }
+        if (profiled > 0) entries.sort(Comparator.comparingLong(entry -> getOrder(entry.getEntry().getName())));
+        return profiled;
+    }
+
+    /**
+     * @return the position of the first of the entries that is loaded, or {@link Long#MAX_VALUE} if none are profiled
+     */
+    public long getFirstLoad(List<Partition.Entry> entries) {
+        long first = Long.MAX_VALUE;
+        for (Partition.Entry entry : entries) {
+            Integer rank = ranks.get(entry.getEntry().getName());
+            if (rank != null) first = Math.min(first, rank);
+        }
+        return first;
+    }
+
+    private long getOrder(String name) {
+        if (name.startsWith("META-INF/")) return Long.MIN_VALUE;
+        Integer rank = ranks.get(name);
+        return rank != null ? rank : Long.MAX_VALUE;
+    }
+
+    private static class Profile {
+        private ArrayList<LoadedClass> classes;
+    }
+
+    private static class LoadedClass {
+        private String name;
+    }
+}
@@ -0,0 +1,117 @@
+package dev.dediamondpro.jarminifier;
+
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+import java.util.zip.Deflater;
+
+/**
+ * Decides how entries that are compressed by the minifier itself are compressed, by the extension of their name,
+ * and keeps track of how much that saved and how long it took. Inner jars are always stored, they are compressed
+ * already and the loader can read them straight from the container that way.
+ */
+public class CompressionStrategy {
+    /**
+     * Level for entries that are stored without compressing them, such as images that are compressed already.
+     */
+    public static final int STORED = -2;
+
+    private final int defaultLevel;
+    private final Map<String, Integer> levels;
+    private final boolean recompress;
+    private final TreeMap<String, Stats> stats = new TreeMap<>();
+
+    /**
+     * @param levels     deflate levels by file extension, which override the default level
+     * @param recompress whether entries of inner jars are recompressed instead of copied as they are
+     */
+    public CompressionStrategy(int defaultLevel, Map<String, Integer> levels, boolean recompress) {
+        this.defaultLevel = defaultLevel;
+        this.levels = levels;
+        this.recompress = recompress;
+    }
+
+    /**
+     * @return the deflate level for an entry, or {@link #STORED}
+     */
+    public int getLevel(String name) {
+        return levels.getOrDefault(getType(name), defaultLevel);
+    }
+
+    public boolean isRecompress() {
+        return recompress;
+    }
+
+    /**
+     * Deflates the data, counting it in the summary.
+     */
+    public byte[] deflate(String name, byte[] data, int level) {
+        long start = System.nanoTime();
+        byte[] compressed = deflate(data, level);
+        record(name, data.length, compressed.length, System.nanoTime() - start);
+        return compressed;
+    }
+
+    /**
+     * Counts an entry that was written without compressing it.
+     */
+    public void recordStored(String name, long size) {
+        record(name, size, size, 0);
+    }
+
+    private synchronized void record(String name, long size, long compressedSize, long nanos) {
+        Stats typeStats = stats.computeIfAbsent(getType(name), type -> new Stats());
+        typeStats.entries++;
+        typeStats.size += size;
+        typeStats.compressedSize += compressedSize;
+        typeStats.nanos += nanos;
+    }
+
+    /**
+     * Prints how large each type of entry was before and after compressing it, and how long that took.
+     */
+    public synchronized void printSummary() {
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats typeStats = entry.getValue();
+            System.out.printf("%d %s entries: %d bytes, %d compressed in %d ms%n", typeStats.entries, entry.getKey(),
+                    typeStats.size, typeStats.compressedSize, typeStats.nanos / 1_000_000);
+        }
+    }
+
+    /**
+     * @return the settings that change the output, so inner jars built with other settings aren't reused
+     */
+    @Override
+    public String toString() {
+        return "level=" + defaultLevel + ",levels=" + new TreeMap<>(levels) + ",recompress=" + recompress;
+    }
+
+    public static byte[] deflate(byte[] data, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) out.write(buffer, 0, deflater.deflate(buffer));
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return the extension of the entry's name, which levels are configured by
+     */
+    private static String getType(String name) {
+        String fileName = name.substring(name.lastIndexOf('/') + 1);
+        int dot = fileName.lastIndexOf('.');
+        return dot == -1 ? "other" : fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static class Stats {
+        private int entries = 0;
+        private long size = 0;
+        private long compressedSize = 0;
+        private long nanos = 0;
+    }
+}
@@ -0,0 +1,80 @@
+package dev.dediamondpro.jarminifier;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/**
+ * Encodes an entry as a patch against another version of it. A patch starts with {@link #MAGIC} and the length of the
+ * target as a varint, followed by operations until the target is complete: {@link #ADD} with a varint length and that
+ * many literal bytes, or {@link #COPY} with a varint offset and length into the base.
+ */
+public class DeltaEncoder {
+    public static final byte[] MAGIC = {'O', 'L', 'D', 1};
+    public static final int ADD = 0;
+    public static final int COPY = 1;
+    private static final int BLOCK_SIZE = 16;
+
+    public static byte[] encode(byte[] base, byte[] target) {
+        // The first offset of every block in the base, by its hash
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK_SIZE <= base.length; i++) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(MAGIC, 0, MAGIC.length);
+        writeVarInt(out, target.length);
+        int literalStart = 0;
+        int i = 0;
+        while (i + BLOCK_SIZE <= target.length) {
+            Integer offset = blocks.get(hash(target, i));
+            if (offset == null || !matches(base, offset, target, i, BLOCK_SIZE)) {
+                i++;
+                continue;
+            }
+            int start = offset;
+            int length = BLOCK_SIZE;
+            while (start + length < base.length && i + length < target.length && base[start + length] == target[i + length]) length++;
+            while (start > 0 && i > literalStart && base[start - 1] == target[i - 1]) {
+                start--;
+                i--;
+                length++;
+            }
+            writeAdd(out, target, literalStart, i);
+            out.write(COPY);
+            writeVarInt(out, start);
+            writeVarInt(out, length);
+            i += length;
+            literalStart = i;
+        }
+        writeAdd(out, target, literalStart, target.length);
+        return out.toByteArray();
+    }
+
+    private static void writeAdd(ByteArrayOutputStream out, byte[] target, int start, int end) {
+        if (start == end) return;
+        out.write(ADD);
+        writeVarInt(out, end - start);
+        out.write(target, start, end - start);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int hash = 1;
+        for (int i = offset; i < offset + BLOCK_SIZE; i++) hash = 31 * hash + data[i];
+        return hash;
+    }
+
+    private static boolean matches(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) return false;
+        }
+        return true;
+    }
+}
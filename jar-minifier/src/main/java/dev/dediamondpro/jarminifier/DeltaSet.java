@@ -0,0 +1,111 @@
+package dev.dediamondpro.jarminifier;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Predicate;
+
+/**
+ * Entries that are stored once as a base, with every other version of them stored as a patch against that base.
+ * The base and patches are stored in the container under {@link #DIRECTORY} by their content hash, and the
+ * partitions that would have held the entries describe them with {@link OmniLoaderSchema.Delta}s instead.
+ */
+public class DeltaSet {
+    public static final String DIRECTORY = "omniloader/delta/";
+
+    private final IdentityHashMap<EntryIndex.Group, OmniLoaderSchema.Delta> deltas;
+    private final LinkedHashMap<String, byte[]> blobs;
+    private final long savedBytes;
+
+    private DeltaSet(IdentityHashMap<EntryIndex.Group, OmniLoaderSchema.Delta> deltas, LinkedHashMap<String, byte[]> blobs, long savedBytes) {
+        this.deltas = deltas;
+        this.blobs = blobs;
+        this.savedBytes = savedBytes;
+    }
+
+    /**
+     * Picks the version of every entry that is shared by the most jars as its base, and patches the other versions
+     * against it when the patch is less than half the size of the compressed entry.
+     *
+     * @param eligible whether entries with the given name may be delta encoded
+     */
+    public static DeltaSet build(List<ZipReader> jars, EntryIndex index, Predicate<String> eligible, ExecutorService executor) throws IOException {
+        ArrayList<Callable<NameDeltas>> tasks = new ArrayList<>();
+        for (List<EntryIndex.Group> groups : index.getGroups()) {
+            if (groups.size() < 2 || !eligible.test(groups.get(0).getName()) || groups.get(0).getName().endsWith("/")) continue;
+            tasks.add(() -> encode(jars, groups));
+        }
+        IdentityHashMap<EntryIndex.Group, OmniLoaderSchema.Delta> deltas = new IdentityHashMap<>();
+        LinkedHashMap<String, byte[]> blobs = new LinkedHashMap<>();
+        long savedBytes = 0;
+        for (NameDeltas result : Parallel.invokeAll(executor, tasks)) {
+            if (result == null) continue;
+            deltas.putAll(result.deltas);
+            for (Map.Entry<String, byte[]> blob : result.blobs.entrySet()) blobs.putIfAbsent(blob.getKey(), blob.getValue());
+            savedBytes += result.savedBytes;
+        }
+        return new DeltaSet(deltas, blobs, savedBytes);
+    }
+
+    private static NameDeltas encode(List<ZipReader> jars, List<EntryIndex.Group> groups) throws IOException {
+        EntryIndex.Group base = groups.get(0);
+        for (EntryIndex.Group group : groups) {
+            if (group.getJars().cardinality() > base.getJars().cardinality()) base = group;
+        }
+        byte[] baseContent = read(jars, base);
+        String basePath = DIRECTORY + DigestUtils.md5Hex(baseContent) + ".bin";
+        NameDeltas result = new NameDeltas();
+        for (EntryIndex.Group group : groups) {
+            if (group == base) continue;
+            ZipReader.Entry entry = jars.get(group.getFirstJar()).getEntry(group.getName());
+            byte[] patch = DeltaEncoder.encode(baseContent, read(jars, group));
+            if (patch.length * 2L >= entry.getCompressedSize()) continue;
+            String patchPath = DIRECTORY + DigestUtils.md5Hex(patch) + ".patch";
+            result.deltas.put(group, new OmniLoaderSchema.Delta(group.getName(), basePath, patchPath));
+            result.blobs.put(patchPath, patch);
+            result.savedBytes += entry.getCompressedSize() - patch.length;
+        }
+        if (result.deltas.isEmpty()) return null;
+        result.deltas.put(base, new OmniLoaderSchema.Delta(base.getName(), basePath, null));
+        result.blobs.put(basePath, baseContent);
+        return result;
+    }
+
+    private static byte[] read(List<ZipReader> jars, EntryIndex.Group group) throws IOException {
+        ZipReader jar = jars.get(group.getFirstJar());
+        try (InputStream in = jar.getInputStream(jar.getEntry(group.getName()))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * @return the delta describing the group's content, or null if it is stored normally
+     */
+    public OmniLoaderSchema.Delta getDelta(EntryIndex.Group group) {
+        return deltas.get(group);
+    }
+
+    /**
+     * @return the content of every base and patch, by its path in the container
+     */
+    public Map<String, byte[]> getBlobs() {
+        return blobs;
+    }
+
+    /**
+     * @return roughly how many bytes delta encoding saves, not counting that patches are compressed as well
+     */
+    public long getSavedBytes() {
+        return savedBytes;
+    }
+
+    private static class NameDeltas {
+        private final IdentityHashMap<EntryIndex.Group, OmniLoaderSchema.Delta> deltas = new IdentityHashMap<>();
+        private final LinkedHashMap<String, byte[]> blobs = new LinkedHashMap<>();
+        private long savedBytes = 0;
+    }
+}
@@ -0,0 +1,250 @@
+package dev.dediamondpro.jarminifier;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * Index of every entry in the input jars, grouped by name and content.
+ * Every entry is decompressed and hashed at most once, and only when another jar has an entry
+ * with the same name, CRC32 and size according to the central directory.
+ * When classes are normalized, every class is hashed with {@link ClassNormalizer} instead,
+ * since classes that only differ in debug information have a different CRC32 and size.
+ */
+public class EntryIndex {
+    private final int jarCount;
+    private final LinkedHashMap<String, List<Group>> groups;
+    private final int normalizedClasses;
+    private final long normalizedBytes;
+
+    private EntryIndex(int jarCount, LinkedHashMap<String, List<Group>> groups, int normalizedClasses, long normalizedBytes) {
+        this.jarCount = jarCount;
+        this.groups = groups;
+        this.normalizedClasses = normalizedClasses;
+        this.normalizedBytes = normalizedBytes;
+    }
+
+    /**
+     * @param knownHashes hashes already known from a previous build, returning null for entries that have to be hashed
+     */
+    public static EntryIndex build(List<ZipReader> jars, Predicate<String> excluded, Predicate<String> splitAllowed,
+                                   BiFunction<Integer, ZipReader.Entry, String> knownHashes, boolean normalizeClasses,
+                                   ExecutorService executor) throws IOException {
+        ArrayList<Callable<List<Candidate>>> scanTasks = new ArrayList<>();
+        for (int i = 0; i < jars.size(); i++) {
+            int jar = i;
+            scanTasks.add(() -> {
+                ArrayList<Candidate> jarCandidates = new ArrayList<>();
+                for (ZipReader.Entry entry : jars.get(jar).getEntries()) {
+                    if (excluded.test(entry.getName())) continue;
+                    jarCandidates.add(new Candidate(jar, entry));
+                }
+                return jarCandidates;
+            });
+        }
+        LinkedHashMap<String, List<Candidate>> candidates = new LinkedHashMap<>();
+        for (List<Candidate> jarCandidates : Parallel.invokeAll(executor, scanTasks)) {
+            for (Candidate candidate : jarCandidates) {
+                candidates.computeIfAbsent(candidate.entry.getName(), name -> new ArrayList<>()).add(candidate);
+            }
+        }
+        // Entries whose CRC32 or size differ can never have the same content, so they are only hashed
+        // when the central directory can't tell them apart.
+        ArrayList<List<Candidate>> toHash = new ArrayList<>();
+        for (int i = 0; i < jars.size(); i++) toHash.add(new ArrayList<>());
+        LinkedHashMap<String, Collection<List<Candidate>>> buckets = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Candidate>> entry : candidates.entrySet()) {
+            boolean normalize = normalizeClasses && entry.getKey().endsWith(".class");
+            Collection<List<Candidate>> nameBuckets = bucket(entry.getValue(), splitAllowed.test(entry.getKey()), normalize);
+            for (List<Candidate> bucket : nameBuckets) {
+                if (bucket.size() == 1) continue;
+                for (Candidate candidate : bucket) {
+                    candidate.hash = knownHashes.apply(candidate.jar, candidate.entry);
+                    if (candidate.hash == null) toHash.get(candidate.jar).add(candidate);
+                }
+            }
+            buckets.put(entry.getKey(), nameBuckets);
+        }
+        ArrayList<Callable<Void>> hashTasks = new ArrayList<>();
+        for (int i = 0; i < jars.size(); i++) {
+            ZipReader jar = jars.get(i);
+            List<Candidate> jarCandidates = toHash.get(i);
+            hashTasks.add(() -> {
+                for (Candidate candidate : jarCandidates) {
+                    try (InputStream in = jar.getInputStream(candidate.entry)) {
+                        boolean normalize = normalizeClasses && candidate.entry.getName().endsWith(".class");
+                        candidate.hash = normalize ? ClassNormalizer.hash(in) : DigestUtils.md5Hex(in);
+                    }
+                }
+                return null;
+            });
+        }
+        Parallel.invokeAll(executor, hashTasks);
+        LinkedHashMap<String, List<Group>> groups = new LinkedHashMap<>();
+        for (Map.Entry<String, Collection<List<Candidate>>> entry : buckets.entrySet()) {
+            groups.put(entry.getKey(), group(entry.getKey(), entry.getValue()));
+        }
+        // Only the first jar's copy of a group is stored, so every other variant of its bytes is saved by normalizing
+        int normalizedClasses = 0;
+        long normalizedBytes = 0;
+        if (normalizeClasses) for (Map.Entry<String, List<Candidate>> entry : candidates.entrySet()) {
+            if (!entry.getKey().endsWith(".class")) continue;
+            HashMap<String, HashMap<String, Long>> variants = new HashMap<>();
+            for (Candidate candidate : entry.getValue()) {
+                if (candidate.hash == null) continue;
+                variants.computeIfAbsent(candidate.hash, hash -> new LinkedHashMap<>())
+                        .putIfAbsent(candidate.crc + ":" + candidate.size, candidate.entry.getCompressedSize());
+            }
+            for (HashMap<String, Long> groupVariants : variants.values()) {
+                if (groupVariants.size() == 1) continue;
+                normalizedClasses++;
+                Iterator<Long> sizes = groupVariants.values().iterator();
+                sizes.next();
+                while (sizes.hasNext()) normalizedBytes += sizes.next();
+            }
+        }
+        return new EntryIndex(jars.size(), groups, normalizedClasses, normalizedBytes);
+    }
+
+    private static Collection<List<Candidate>> bucket(List<Candidate> candidates, boolean splitAllowed, boolean normalize) {
+        if (!splitAllowed || candidates.size() == 1) {
+            ArrayList<List<Candidate>> buckets = new ArrayList<>();
+            for (Candidate candidate : candidates) buckets.add(Collections.singletonList(candidate));
+            return buckets;
+        }
+        if (normalize) return Collections.singletonList(candidates);
+        LinkedHashMap<String, List<Candidate>> buckets = new LinkedHashMap<>();
+        for (Candidate candidate : candidates) {
+            if (candidate.crc == -1 || candidate.size == -1) return Collections.singletonList(candidates);
+            buckets.computeIfAbsent(candidate.crc + ":" + candidate.size, key -> new ArrayList<>()).add(candidate);
+        }
+        return buckets.values();
+    }
+
+    private static List<Group> group(String name, Collection<List<Candidate>> buckets) {
+        ArrayList<Group> result = new ArrayList<>();
+        for (List<Candidate> bucket : buckets) {
+            LinkedHashMap<String, Group> hashed = new LinkedHashMap<>();
+            for (Candidate candidate : bucket) {
+                if (candidate.hash == null) {
+                    result.add(new Group(name, null, candidate.jar));
+                    continue;
+                }
+                Group group = hashed.get(candidate.hash);
+                if (group == null) hashed.put(candidate.hash, new Group(name, candidate.hash, candidate.jar));
+                else group.jars.set(candidate.jar);
+            }
+            result.addAll(hashed.values());
+        }
+        result.sort(Comparator.comparingInt(Group::getFirstJar));
+        return result;
+    }
+
+    public int getJarCount() {
+        return jarCount;
+    }
+
+    /**
+     * @return the content group the entry with the given name in the given jar belongs to, or null if it isn't indexed
+     */
+    public Group getGroup(int jar, String name) {
+        List<Group> nameGroups = groups.get(name);
+        if (nameGroups == null) return null;
+        for (Group group : nameGroups) {
+            if (group.jars.get(jar)) return group;
+        }
+        return null;
+    }
+
+    /**
+     * @return the hashes of every entry of the given jar that had to be hashed, by entry name
+     */
+    public Map<String, String> getHashes(int jar) {
+        LinkedHashMap<String, String> hashes = new LinkedHashMap<>();
+        for (List<Group> nameGroups : groups.values()) {
+            for (Group group : nameGroups) {
+                if (group.hash != null && group.jars.get(jar)) hashes.put(group.name, group.hash);
+            }
+        }
+        return hashes;
+    }
+
+    public Collection<List<Group>> getGroups() {
+        return groups.values();
+    }
+
+    /**
+     * @return the number of classes that are only shared between jars because they were normalized
+     */
+    public int getNormalizedClasses() {
+        return normalizedClasses;
+    }
+
+    /**
+     * @return the compressed size of the class variants that no longer have to be stored because classes were normalized
+     */
+    public long getNormalizedBytes() {
+        return normalizedBytes;
+    }
+
+    /**
+     * Identifier of the partition that contains all entries shared by exactly the given jars.
+     */
+    public String getIdentifier(BitSet jars) {
+        StringBuilder identifier = new StringBuilder(jarCount);
+        for (int i = 0; i < jarCount; i++) identifier.append(jars.get(i) ? '1' : '0');
+        return identifier.toString();
+    }
+
+    public static class Group {
+        private final String name;
+        private final String hash;
+        private final BitSet jars = new BitSet();
+
+        private Group(String name, String hash, int jar) {
+            this.name = name;
+            this.hash = hash;
+            this.jars.set(jar);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the MD5 of the content, or null if no other jar had an entry this could be equal to
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        public BitSet getJars() {
+            return jars;
+        }
+
+        public int getFirstJar() {
+            return jars.nextSetBit(0);
+        }
+    }
+
+    private static class Candidate {
+        private final int jar;
+        private final ZipReader.Entry entry;
+        private final long crc;
+        private final long size;
+        private String hash;
+
+        private Candidate(int jar, ZipReader.Entry entry) {
+            this.jar = jar;
+            this.entry = entry;
+            this.crc = entry.getCrc();
+            this.size = entry.getSize();
+        }
+    }
+}
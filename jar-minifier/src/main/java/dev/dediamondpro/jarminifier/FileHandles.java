@@ -0,0 +1,85 @@
+package dev.dediamondpro.jarminifier;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Limits how many files have an open handle at the same time, for inputs with more jars than the system allows open files.
+ * Handles are shared while in use, and the least recently used handle that isn't in use is closed when another file
+ * needs one. Callers hold at most one handle at a time, so waiting for a handle to become available can't deadlock.
+ */
+public class FileHandles implements Closeable {
+    private final int limit;
+    private final LinkedHashMap<File, Handle> open = new LinkedHashMap<>(16, 0.75f, true);
+
+    public FileHandles(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @return an open channel for the file, which must be given back with {@link #release(File)} when done reading
+     */
+    public synchronized FileChannel acquire(File file) throws IOException {
+        while (true) {
+            Handle handle = open.get(file);
+            if (handle != null) {
+                handle.users++;
+                return handle.channel;
+            }
+            if (open.size() < limit || evictIdle()) {
+                handle = new Handle(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+                handle.users++;
+                open.put(file, handle);
+                return handle.channel;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a file handle", e);
+            }
+        }
+    }
+
+    public synchronized void release(File file) {
+        Handle handle = open.get(file);
+        if (handle != null && --handle.users == 0) notifyAll();
+    }
+
+    /**
+     * Closes the least recently used handle that isn't in use.
+     *
+     * @return whether there was a handle to close
+     */
+    private boolean evictIdle() throws IOException {
+        Iterator<Handle> handles = open.values().iterator();
+        while (handles.hasNext()) {
+            Handle handle = handles.next();
+            if (handle.users > 0) continue;
+            handles.remove();
+            handle.channel.close();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Handle handle : open.values()) handle.channel.close();
+        open.clear();
+    }
+
+    private static class Handle {
+        private final FileChannel channel;
+        private int users = 0;
+
+        private Handle(FileChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package dev.dediamondpro.jarminifier;
+
+/**
+ * Memory shared by all {@link SpillBuffer}s, once it's used up further writes to a buffer make it spill to disk.
+ */
+public class MemoryBudget {
+    private final long limit;
+    private long used = 0;
+
+    public MemoryBudget(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @return whether the bytes fit in the budget, in which case they are counted as used until freed
+     */
+    public synchronized boolean reserve(long bytes) {
+        if (used + bytes > limit) return false;
+        used += bytes;
+        return true;
+    }
+
+    public synchronized void free(long bytes) {
+        used -= bytes;
+    }
+}
@@ -0,0 +1,516 @@
+package dev.dediamondpro.jarminifier;
+
+import com.google.gson.*;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Minifies the jars of one mod into a container. Everything that is specific to a mod is kept per instance, so
+ * several mods can be minified in the same process, one after the other or at the same time.
+ */
+public class Minifier {
+    // Fixed timestamp so rebuilding the same input produces the same container
+    private static final int ENTRY_TIME = ZipWriter.toDosTime(LocalDateTime.of(1980, 2, 1, 0, 0));
+    private static final int SCHEMA_VERSION = 1;
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private final MinifierOptions options;
+    private final ExecutorService executor;
+    private final NestedJarCache nestedJarCache;
+    private final CompressionStrategy compression;
+    private final HashSet<String> noSplitFiles = new HashSet<>();
+    private final HashSet<String> excludedFiles = new HashSet<>();
+
+    /**
+     * @param executor       the workers to scan jars and write inner jars on, which may be shared with other minifiers
+     * @param nestedJarCache the nested jars shared with other minifiers, or null to extract every nested jar from its source jar
+     */
+    public Minifier(MinifierOptions options, ExecutorService executor, NestedJarCache nestedJarCache) {
+        this.options = options;
+        this.executor = executor;
+        this.nestedJarCache = nestedJarCache;
+        this.compression = new CompressionStrategy(options.getDeflateLevel(), options.getDeflateLevels(), options.isRecompress());
+        //noSplitFiles.add("fabric.mod.json");
+    }
+
+    /**
+     * Minifies the jars in the jars directory into a single container in the output directory.
+     *
+     * @return the container
+     */
+    public File minify() throws IOException {
+        long startTime = System.nanoTime();
+        FileHandles handles = options.getMaxOpenJars() != Integer.MAX_VALUE ? new FileHandles(options.getMaxOpenJars()) : null;
+        MemoryBudget memoryBudget = options.getMemoryBudget() != Long.MAX_VALUE ? new MemoryBudget(options.getMemoryBudget()) : null;
+        // Without a limit, inner jars are written as soon as they are known, overlapping with indexing the other jars
+        boolean startEagerly = options.getMaxPendingJars() == Integer.MAX_VALUE;
+        // Sorted so the output doesn't depend on the order the file system lists the jars in
+        List<ZipReader> jars = Arrays.stream(Objects.requireNonNull(options.getJarsDir().listFiles(((dir, name) -> name.endsWith(".jar"))))).sorted().map(file -> {
+            try {
+                return new ZipReader(file, handles);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }).toList();
+        File destDir = options.getOutDir();
+        if (!options.isStream()) destDir.mkdir();
+        if (!options.isStream() && !options.isIncremental()) {
+            Arrays.stream(Objects.requireNonNull(destDir.listFiles())).forEach(file -> file.delete());
+        }
+        File manifestFile = new File(destDir, BuildManifest.FILE_NAME);
+        BuildManifest previousBuild = options.isIncremental() ? BuildManifest.load(manifestFile, SCHEMA_VERSION, options.isNormalizeClasses()) : null;
+        HashMap<ZipReader, String> versions = new HashMap<>();
+        ArrayList<List<String>> nestedPaths = new ArrayList<>();
+        JsonObject generatedFabricJson = JsonParser.parseReader(new InputStreamReader(Objects.requireNonNull(Minifier.class.getResourceAsStream("/fabric.mod.json")))).getAsJsonObject();
+        String iconPath = null;
+        byte[] iconBytes = null;
+        HashMap<String, HashMap<String, ArrayList<String>>> allDependencies = new LinkedHashMap<>();
+        HashMap<String, HashMap<String, Integer>> dependencyCounts = new HashMap<>();
+        String modId = null;
+        ArrayList<Callable<JsonObject>> readTasks = new ArrayList<>();
+        for (ZipReader jar : jars) {
+            readTasks.add(() -> {
+                ZipReader.Entry fabricJson = jar.getEntry("fabric.mod.json");
+                if (fabricJson == null) return null;
+                try (InputStreamReader reader = new InputStreamReader(jar.getInputStream(fabricJson))) {
+                    return JsonParser.parseReader(reader).getAsJsonObject();
+                }
+            });
+        }
+        List<JsonObject> fabricJsons = Parallel.invokeAll(executor, readTasks);
+        for (int i = 0; i < jars.size(); i++) {
+            ZipReader jar = jars.get(i);
+            JsonObject json = fabricJsons.get(i);
+            ArrayList<String> jarNestedPaths = new ArrayList<>();
+            nestedPaths.add(jarNestedPaths);
+            if (json == null) {
+                System.err.println("No fabric.mod.json found in " + jar.getName());
+                continue;
+            }
+            String mcVersion = json.getAsJsonObject("depends").get("minecraft").getAsString();
+            versions.put(jar, mcVersion);
+            if (json.has("mixins")) for (JsonElement element : json.getAsJsonArray("mixins")) {
+                //noSplitFiles.add(element.getAsString());
+            }
+            if (json.has("jars")) for (JsonElement element : json.getAsJsonArray("jars")) {
+                String file = element.getAsJsonObject().get("file").getAsString();
+                excludedFiles.add(file);
+                jarNestedPaths.add(file);
+            }
+            if (json.has("id")) {
+                generatedFabricJson.addProperty("id", json.get("id").getAsString() + "-container");
+                generatedFabricJson.getAsJsonObject("custom").getAsJsonObject("modmenu")
+                        .getAsJsonObject("parent").add("id", json.get("id"));
+                modId = json.get("id").getAsString();
+            }
+            if (json.has("name")) generatedFabricJson.add("name", json.get("name"));
+            if (json.has("version")) generatedFabricJson.add("version", json.get("version"));
+            if (json.has("description")) generatedFabricJson.add("description", json.get("description"));
+            if (json.has("contact")) generatedFabricJson.add("contact", json.get("contact"));
+            if (json.has("authors")) generatedFabricJson.add("authors", json.get("authors"));
+            if (json.has("contributors")) generatedFabricJson.add("contributors", json.get("contributors"));
+            if (json.has("license")) generatedFabricJson.add("license", json.get("license"));
+            if (json.has("environment")) generatedFabricJson.add("environment", json.get("environment"));
+            if (json.has("icon")) {
+                ZipReader.Entry icon = jar.getEntry(json.get("icon").getAsString());
+                if (icon != null) {
+                    generatedFabricJson.add("icon", json.get("icon"));
+                    iconPath = json.get("icon").getAsString();
+                    try (InputStream in = jar.getInputStream(icon)) {
+                        iconBytes = in.readAllBytes();
+                    }
+                }
+            }
+            if (json.has("depends")) collectDependencies("depends", json, allDependencies, dependencyCounts);
+            if (json.has("suggests")) collectDependencies("suggests", json, allDependencies, dependencyCounts);
+            if (json.has("recommends")) collectDependencies("recommends", json, allDependencies, dependencyCounts);
+            if (json.has("breaks")) collectDependencies("breaks", json, allDependencies, dependencyCounts);
+        }
+        generatedFabricJson.getAsJsonArray("provides").add(modId);
+        for (String dependencyType : allDependencies.keySet()) {
+            JsonObject object = new JsonObject();
+            for (String dependency : allDependencies.get(dependencyType).keySet()) {
+                if (dependencyCounts.get(dependencyType).get(dependency) != jars.size()) continue;
+                List<String> depVersions = allDependencies.get(dependencyType).get(dependency);
+                JsonArray array = new JsonArray(depVersions.size());
+                for (String ver : depVersions) array.add(ver);
+                object.add(dependency, array);
+            }
+            generatedFabricJson.add(dependencyType, object);
+        }
+        OmniLoaderSchema schema = new OmniLoaderSchema(SCHEMA_VERSION, new ArrayList<>());
+        // Inner jars in the order they are stored in the container
+        ArrayList<ContainerPart> innerJars = new ArrayList<>();
+        ArrayList<ContainerPart> containerNestedJars = new ArrayList<>();
+        HashMap<String, String> fingerprints = new HashMap<>();
+        BuildManifest manifest = new BuildManifest(SCHEMA_VERSION, options.isNormalizeClasses());
+        HashSet<String> containerNestedNames = new HashSet<>();
+        for (NestedJarIndex.Blob blob : NestedJarIndex.build(jars, nestedPaths, nestedJarCache != null, executor).getBlobs()) {
+            ZipReader jar = blob.getJar();
+            ZipReader.Entry entry = blob.getEntry();
+            ArrayList<String> jarVersions = new ArrayList<>();
+            for (int j = blob.getJars().nextSetBit(0); j >= 0; j = blob.getJars().nextSetBit(j + 1)) {
+                jarVersions.add(versions.get(jars.get(j)));
+            }
+            boolean allVersions = blob.getJars().cardinality() == jars.size();
+            // Jars every version nests keep their name, unless another jar every version nests has the same name
+            String fileName = allVersions && containerNestedNames.add(blob.getFileName()) ? blob.getFileName() : blob.getName();
+            if (options.isExploded() && !allVersions) {
+                // Has to be a real file to read the nested jar's entries from
+                Pending<SpillBuffer> buffer = new Pending<>(executor, () -> {
+                    if (nestedJarCache != null) return nestedJarCache.get(jar, entry, blob.getHash());
+                    SpillBuffer out = new SpillBuffer(0);
+                    try (out; InputStream in = jar.getInputStream(entry)) {
+                        in.transferTo(out);
+                    }
+                    return out;
+                });
+                String directory = "omniloader/" + fileName.substring(0, fileName.length() - ".jar".length()) + "/";
+                OmniLoaderSchema.Jar schemaJar = new OmniLoaderSchema.Jar(directory, jarVersions, Collections.singletonList("fabric"), false);
+                schemaJar.setFabricModJson(readNestedFabricModJson(jar, entry));
+                schema.getJars().add(schemaJar);
+                innerJars.add(new ContainerPart(buffer, (out, nestedJar) -> {
+                    try (ZipReader reader = new ZipReader(nestedJar.getFile())) {
+                        for (ZipReader.Entry nestedEntry : reader.getEntries()) {
+                            out.copyRaw(reader, nestedEntry, directory + nestedEntry.getName());
+                        }
+                    }
+                    nestedJar.delete();
+                }));
+                if (startEagerly) buffer.start();
+                continue;
+            }
+            fingerprints.put(fileName, fingerprint(Collections.singletonList(entry)));
+            // Streamed containers can store the cached copy as is, otherwise it's copied to the out directory
+            Pending<SpillBuffer> buffer = nestedJarCache != null && options.isStream()
+                    ? new Pending<>(executor, () -> nestedJarCache.get(jar, entry, blob.getHash()))
+                    : submitInnerJar(memoryBudget, destDir, previousBuild, fileName, fingerprints.get(fileName), out -> {
+                try (InputStream in = nestedJarCache != null ? nestedJarCache.get(jar, entry, blob.getHash()).getInputStream() : jar.getInputStream(entry)) {
+                    in.transferTo(out);
+                }
+            });
+            if (startEagerly) buffer.start();
+            if (!allVersions) {
+                OmniLoaderSchema.Jar schemaJar = new OmniLoaderSchema.Jar("omniloader/" + fileName, jarVersions, Collections.singletonList("fabric"), false);
+                schemaJar.setFabricModJson(readNestedFabricModJson(jar, entry));
+                schema.getJars().add(schemaJar);
+                innerJars.add(storeInnerJar(destDir, manifest, fingerprints, "omniloader/" + fileName, buffer));
+            } else {
+                JsonObject object = new JsonObject();
+                object.addProperty("file", "META-INF/jars/" + fileName);
+                generatedFabricJson.getAsJsonArray("jars").add(object);
+                containerNestedJars.add(storeInnerJar(destDir, manifest, fingerprints, "META-INF/jars/" + fileName, buffer));
+            }
+        }
+        for (int i = 0; i < jars.size(); i++) {
+            System.out.println(i + ": " + jars.get(i).getName());
+        }
+        ArrayList<Callable<BuildManifest.JarRecord>> unchangedTasks = new ArrayList<>();
+        for (ZipReader jar : jars) {
+            unchangedTasks.add(() -> previousBuild == null ? null : previousBuild.findUnchanged(jar.getFile()));
+        }
+        List<BuildManifest.JarRecord> unchangedJars = Parallel.invokeAll(executor, unchangedTasks);
+        EntryIndex index = EntryIndex.build(jars, excludedFiles::contains, this::isSplitAllowed, (jar, entry) -> {
+            BuildManifest.JarRecord record = unchangedJars.get(jar);
+            return record == null ? null : record.getHash(entry);
+        }, options.isNormalizeClasses(), executor);
+        if (options.isNormalizeClasses()) {
+            System.out.println("Normalizing classes shared " + index.getNormalizedClasses() + " more classes, saving "
+                    + index.getNormalizedBytes() + " bytes of compressed class data");
+        }
+        // The fabric.mod.json of a partition is read by the loader before any deltas are applied
+        DeltaSet deltas = options.isDelta() ? DeltaSet.build(jars, index, name -> isSplitAllowed(name) && !name.equals("fabric.mod.json"), executor) : null;
+        if (deltas != null) System.out.println("Delta encoding saved about " + deltas.getSavedBytes() + " bytes");
+        LinkedHashMap<String, Partition> partitions = new LinkedHashMap<>();
+        for (int i = 0; i < jars.size(); i++) {
+            for (ZipReader.Entry entry : jars.get(i).getEntries()) {
+                EntryIndex.Group group = index.getGroup(i, entry.getName());
+                if (group == null || group.getFirstJar() != i) continue;
+                Partition partition = partitions.computeIfAbsent(index.getIdentifier(group.getJars()), key -> new Partition(key, group.getJars()));
+                OmniLoaderSchema.Delta delta = deltas != null ? deltas.getDelta(group) : null;
+                if (delta != null) partition.getDeltas().add(delta);
+                else partition.getEntries().add(new Partition.Entry(i, entry));
+            }
+        }
+        PartitionPlanner.plan(partitions, index, options.getClasspathEntryCost(), options.getMaxJarsPerVersion());
+        ClassProfile profile = options.getClassProfiles().isEmpty() ? null : ClassProfile.load(options.getClassProfiles());
+        if (profile != null) {
+            int profiled = 0;
+            for (Partition partition : partitions.values()) profiled += profile.sort(partition.getEntries());
+            System.out.println("Ordered " + profiled + " classes by their class load profile");
+        }
+        ArrayList<ContainerPart> partitionParts = new ArrayList<>();
+        ArrayList<Long> firstLoads = new ArrayList<>();
+        for (Partition partition : partitions.values()) {
+            firstLoads.add(profile != null ? profile.getFirstLoad(partition.getEntries()) : Long.MAX_VALUE);
+            String fileName = modId + "-" + partition.getIdentifier() + ".jar";
+            ArrayList<String> jarVersions = new ArrayList<>();
+            for (int j = partition.getJars().nextSetBit(0); j >= 0; j = partition.getJars().nextSetBit(j + 1)) {
+                jarVersions.add(versions.get(jars.get(j)));
+            }
+            if (options.isExploded()) {
+                String directory = "omniloader/" + modId + "-" + partition.getIdentifier() + "/";
+                OmniLoaderSchema.Jar schemaJar = new OmniLoaderSchema.Jar(directory, jarVersions, Collections.singletonList("fabric"), true);
+                schemaJar.setFabricModJson(getFabricModJson(partition, fabricJsons));
+                schema.getJars().add(schemaJar);
+                partitionParts.add(new ContainerPart(null, (out, ignored) -> {
+                    for (Partition.Entry entry : partition.getEntries()) {
+                        if (compression.isRecompress()) {
+                            out.recompress(jars.get(entry.getJar()), entry.getEntry(), directory + entry.getEntry().getName(), compression);
+                        } else {
+                            out.copyRaw(jars.get(entry.getJar()), entry.getEntry(), directory + entry.getEntry().getName());
+                        }
+                    }
+                }));
+                continue;
+            }
+            List<OmniLoaderSchema.Delta> partitionDeltas = partition.getDeltas().isEmpty() ? null : partition.getDeltas();
+            OmniLoaderSchema.Jar schemaJar = new OmniLoaderSchema.Jar("omniloader/" + fileName, jarVersions, Collections.singletonList("fabric"), true, partitionDeltas);
+            schemaJar.setFabricModJson(getFabricModJson(partition, fabricJsons));
+            schema.getJars().add(schemaJar);
+            String fingerprint = fingerprint(partition.getEntries().stream().map(Partition.Entry::getEntry).toList());
+            fingerprints.put(fileName, compression.isRecompress() ? DigestUtils.sha256Hex(fingerprint + compression) : fingerprint);
+            Pending<SpillBuffer> buffer = submitInnerJar(memoryBudget, destDir, previousBuild, fileName, fingerprints.get(fileName), innerJar -> {
+                try (ZipWriter out = new ZipWriter(innerJar)) {
+                    for (Partition.Entry entry : partition.getEntries()) {
+                        if (compression.isRecompress()) out.recompress(jars.get(entry.getJar()), entry.getEntry(), compression);
+                        else out.copyRaw(jars.get(entry.getJar()), entry.getEntry());
+                    }
+                }
+            });
+            if (startEagerly) buffer.start();
+            partitionParts.add(storeInnerJar(destDir, manifest, fingerprints, "omniloader/" + fileName, buffer));
+        }
+        // Partitions with classes that are loaded at startup are stored first, in the order they are needed in,
+        // so starting the game reads the start of the container instead of seeking through all of it
+        Integer[] storeOrder = new Integer[partitionParts.size()];
+        for (int i = 0; i < storeOrder.length; i++) storeOrder[i] = i;
+        Arrays.sort(storeOrder, Comparator.comparingLong(firstLoads::get));
+        int startupParts = 0;
+        for (int i : storeOrder) {
+            if (firstLoads.get(i) != Long.MAX_VALUE) innerJars.add(startupParts++, partitionParts.get(i));
+            else innerJars.add(partitionParts.get(i));
+        }
+        if (profile != null) System.out.println("Stored " + startupParts + " inner jars with profiled classes first");
+        innerJars.addAll(containerNestedJars);
+        options.getOutputDir().mkdirs();
+        File container = new File(options.getOutputDir(), modId + ".jar");
+        // Inner jars are stored as they finish, in a fixed order, while the metadata that describes them is written last
+        try (ZipWriter out = new ZipWriter(new FileOutputStream(container))) {
+            out.write("META-INF/MANIFEST.MF", ENTRY_TIME, "Manifest-Version: 1.0".getBytes(), compression);
+            try (InputStream in = Objects.requireNonNull(Minifier.class.getResourceAsStream("/OmniLoader-Info.txt"))) {
+                out.write("OmniLoader-Info.txt", ENTRY_TIME, in.readAllBytes(), compression);
+            }
+            SpillBuffer omniLoaderJar = new SpillBuffer(options.getSpillThreshold(), memoryBudget);
+            try (omniLoaderJar) {
+                Files.copy(options.getOmniLoaderJar().toPath(), omniLoaderJar);
+            }
+            out.writeStored("META-INF/jars/omniloader.jar", ENTRY_TIME, omniLoaderJar);
+            compression.recordStored("META-INF/jars/omniloader.jar", omniLoaderJar.getSize());
+            omniLoaderJar.delete();
+            if (iconBytes != null) out.write(iconPath, ENTRY_TIME, iconBytes, compression);
+            // At most maxPendingJars inner jars are being written or waiting to be stored at a time
+            int started = 0;
+            for (int i = 0; i < innerJars.size(); i++) {
+                while (started < innerJars.size() && started - i < options.getMaxPendingJars()) innerJars.get(started++).start();
+                innerJars.get(i).writeTo(out);
+            }
+            if (deltas != null) for (Map.Entry<String, byte[]> blob : deltas.getBlobs().entrySet()) {
+                out.write(blob.getKey(), ENTRY_TIME, blob.getValue(), compression);
+            }
+            out.write("fabric.mod.json", ENTRY_TIME, gson.toJson(generatedFabricJson).getBytes(), compression);
+            schema.setVersionIndex(VersionIndex.build(schema.getJars()));
+            out.write("omniloader0.json", ENTRY_TIME, gson.toJson(schema).getBytes(), compression);
+        } catch (IOException | RuntimeException e) {
+            // Don't leave a container behind that looks complete but can't be read
+            container.delete();
+            throw e;
+        } finally {
+            for (ZipReader jar : jars) {
+                jar.close();
+            }
+            if (handles != null) handles.close();
+        }
+        if (options.isIncremental()) {
+            for (int i = 0; i < jars.size(); i++) {
+                File file = jars.get(i).getFile();
+                String digest = unchangedJars.get(i) != null ? unchangedJars.get(i).getDigest() : BuildManifest.digest(file);
+                HashMap<String, BuildManifest.EntryRecord> entries = new HashMap<>();
+                for (Map.Entry<String, String> hash : index.getHashes(i).entrySet()) {
+                    entries.put(hash.getKey(), new BuildManifest.EntryRecord(jars.get(i).getEntry(hash.getKey()), hash.getValue()));
+                }
+                manifest.getJars().add(new BuildManifest.JarRecord(file, digest, entries));
+            }
+            // Inner jars of the previous build that are no longer part of the container
+            for (File file : Objects.requireNonNull(destDir.listFiles())) {
+                if (!fingerprints.containsKey(file.getName()) && !file.equals(manifestFile)) file.delete();
+            }
+            manifest.save(manifestFile);
+        }
+        compression.printSummary();
+        System.out.println("Wrote " + container.length() + " bytes in " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+        return container;
+    }
+
+    /**
+     * Prepares writing an inner jar on a worker, to the jar's file in the out directory unless streaming.
+     * When building incrementally and the previous build wrote the same inner jar, that file is reused instead.
+     */
+    private Pending<SpillBuffer> submitInnerJar(MemoryBudget memoryBudget, File destDir, BuildManifest previousBuild, String fileName,
+                                                String fingerprint, InnerJarWriter writer) {
+        File file = new File(destDir, fileName);
+        BuildManifest.InnerJarRecord record = previousBuild == null ? null : previousBuild.findInnerJar(file, fingerprint);
+        if (record != null) return Pending.completed(SpillBuffer.existing(file, record.getCrc(), record.getSize()));
+        return new Pending<>(executor, () -> {
+            SpillBuffer buffer = options.isStream() ? new SpillBuffer(options.getSpillThreshold(), memoryBudget) : SpillBuffer.toFile(file);
+            try (buffer) {
+                writer.write(buffer);
+            }
+            return buffer;
+        });
+    }
+
+    /**
+     * @return a part of the container that stores the inner jar once its worker finishes
+     */
+    private ContainerPart storeInnerJar(File destDir, BuildManifest manifest, Map<String, String> fingerprints, String path,
+                                        Pending<SpillBuffer> innerJar) {
+        return new ContainerPart(innerJar, (out, buffer) -> {
+            out.writeStored(path, ENTRY_TIME, buffer);
+            compression.recordStored(path, buffer.getSize());
+            buffer.delete();
+            if (options.isIncremental()) {
+                String fileName = path.substring(path.lastIndexOf('/') + 1);
+                manifest.getInnerJars().add(new BuildManifest.InnerJarRecord(new File(destDir, fileName), fingerprints.get(fileName), buffer.getCrc()));
+            }
+        });
+    }
+
+    /**
+     * @return a fingerprint of the given source entries, that changes whenever an inner jar made from them would change
+     */
+    private static String fingerprint(List<ZipReader.Entry> entries) {
+        StringBuilder builder = new StringBuilder();
+        for (ZipReader.Entry entry : entries) {
+            builder.append(entry.getName()).append('\0').append(entry.getCrc()).append('\0').append(entry.getSize()).append('\0')
+                    .append(entry.getCompressedSize()).append('\0').append(entry.getMethod()).append('\0').append(entry.getDosTime()).append('\n');
+        }
+        return DigestUtils.sha256Hex(builder.toString());
+    }
+
+    /**
+     * @return the fabric.mod.json of the version the partition's copy of it came from, or null if it doesn't have one
+     */
+    private static JsonObject getFabricModJson(Partition partition, List<JsonObject> fabricJsons) {
+        for (Partition.Entry entry : partition.getEntries()) {
+            if (entry.getEntry().getName().equals("fabric.mod.json")) return fabricJsons.get(entry.getJar());
+        }
+        return null;
+    }
+
+    /**
+     * @return the fabric.mod.json of a jar nested in the source jar, or null if it doesn't have one
+     */
+    private static JsonObject readNestedFabricModJson(ZipReader jar, ZipReader.Entry entry) throws IOException {
+        try (ZipInputStream in = new ZipInputStream(jar.getInputStream(entry))) {
+            for (ZipEntry nestedEntry; (nestedEntry = in.getNextEntry()) != null; ) {
+                if (!nestedEntry.getName().equals("fabric.mod.json")) continue;
+                return JsonParser.parseReader(new InputStreamReader(in, StandardCharsets.UTF_8)).getAsJsonObject();
+            }
+        }
+        return null;
+    }
+
+    private static void collectDependencies(String type, JsonObject json, HashMap<String, HashMap<String, ArrayList<String>>> allDependencies, HashMap<String, HashMap<String, Integer>> dependencyCounts) {
+        HashMap<String, ArrayList<String>> dependencies = allDependencies.computeIfAbsent(type, it -> new LinkedHashMap<>());
+        HashMap<String, Integer> dependenciesCount = dependencyCounts.computeIfAbsent(type, it -> new HashMap<>());
+        for (Map.Entry<String, JsonElement> dependency : json.getAsJsonObject(type).entrySet()) {
+            ArrayList<String> dependencyList = dependencies.computeIfAbsent(dependency.getKey(), it -> new ArrayList<>());
+            if (dependency.getValue().isJsonPrimitive()) {
+                String version = dependency.getValue().getAsString();
+                if (!dependencyList.contains(version)) dependencyList.add(version);
+            } else {
+                for (JsonElement element : dependency.getValue().getAsJsonArray()) {
+                    String version = element.getAsString();
+                    if (!dependencyList.contains(version)) dependencyList.add(version);
+                }
+            }
+            dependenciesCount.compute(dependency.getKey(), (k, v) -> v == null ? 1 : v + 1);
+        }
+    }
+
+    private boolean isSplitAllowed(String name) {
+        return !noSplitFiles.contains(name);
+    }
+
+    private interface InnerJarWriter {
+        void write(SpillBuffer out) throws IOException;
+    }
+
+    private interface PartWriter {
+        void write(ZipWriter container, SpillBuffer buffer) throws IOException;
+    }
+
+    /**
+     * Part of the container, written by a worker into a buffer before it's stored in the container.
+     */
+    private static class ContainerPart {
+        private final Pending<SpillBuffer> buffer;
+        private final PartWriter writer;
+
+        /**
+         * @param buffer the work to do on a worker, or null if the part is written straight to the container
+         */
+        private ContainerPart(Pending<SpillBuffer> buffer, PartWriter writer) {
+            this.buffer = buffer;
+            this.writer = writer;
+        }
+
+        private void start() {
+            if (buffer != null) buffer.start();
+        }
+
+        private void writeTo(ZipWriter container) throws IOException {
+            writer.write(container, buffer != null ? buffer.await() : null);
+        }
+    }
+
+    /**
+     * A task that is only submitted to the workers when started, so the amount of work in flight can be limited.
+     */
+    private static class Pending<T> {
+        private final ExecutorService executor;
+        private final Callable<T> task;
+        private Future<T> future;
+
+        private Pending(ExecutorService executor, Callable<T> task) {
+            this.executor = executor;
+            this.task = task;
+        }
+
+        private static <T> Pending<T> completed(T value) {
+            Pending<T> pending = new Pending<>(null, null);
+            pending.future = CompletableFuture.completedFuture(value);
+            return pending;
+        }
+
+        private void start() {
+            if (future == null) future = executor.submit(task);
+        }
+
+        private T await() throws IOException {
+            start();
+            return Parallel.await(future);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package dev.dediamondpro.jarminifier;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Options passed to the minifier on the command line as {@code --name=value}.
+ */
+public class MinifierOptions {
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean stream = false;
+    private int spillThreshold = 8 * 1024 * 1024;
+    private boolean incremental = false;
+    private boolean exploded = false;
+    private boolean normalizeClasses = false;
+    private boolean delta = false;
+    private long classpathEntryCost = 16 * 1024;
+    private int maxJarsPerVersion = Integer.MAX_VALUE;
+    private int maxOpenJars = Integer.MAX_VALUE;
+    private int maxPendingJars = Integer.MAX_VALUE;
+    private long memoryBudget = Long.MAX_VALUE;
+    private File jarsDir = new File("jars");
+    private File outDir = new File("out");
+    private File omniLoaderJar = new File("omniloader.jar");
+    private File outputDir = new File(".");
+    private File nestedJarCache = null;
+    private File batch = null;
+    private int batchJobs = 4;
+    private int deflateLevel = Deflater.DEFAULT_COMPRESSION;
+    private final HashMap<String, Integer> deflateLevels = new HashMap<>();
+    private boolean recompress = false;
+    private final ArrayList<File> classProfiles = new ArrayList<>();
+
+    public static MinifierOptions parse(String[] args) {
+        MinifierOptions options = new MinifierOptions();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            String value = parts.length == 2 ? parts[1] : null;
+            switch (parts[0]) {
+                case "--threads" -> options.threads = Math.max(1, Integer.parseInt(requireValue(arg, value)));
+                case "--stream" -> options.stream = true;
+                case "--spill-threshold" -> options.spillThreshold = Integer.parseInt(requireValue(arg, value));
+                case "--incremental" -> options.incremental = true;
+                case "--exploded" -> options.exploded = true;
+                case "--normalize-classes" -> options.normalizeClasses = true;
+                case "--delta" -> options.delta = true;
+                case "--classpath-entry-cost" -> options.classpathEntryCost = Long.parseLong(requireValue(arg, value));
+                case "--max-jars-per-version" -> options.maxJarsPerVersion = Math.max(1, Integer.parseInt(requireValue(arg, value)));
+                case "--max-open-jars" -> options.maxOpenJars = Math.max(1, Integer.parseInt(requireValue(arg, value)));
+                case "--max-pending-jars" -> options.maxPendingJars = Math.max(1, Integer.parseInt(requireValue(arg, value)));
+                case "--memory-budget" -> options.memoryBudget = Long.parseLong(requireValue(arg, value));
+                case "--jars-dir" -> options.jarsDir = new File(requireValue(arg, value));
+                case "--out-dir" -> options.outDir = new File(requireValue(arg, value));
+                case "--omniloader-jar" -> options.omniLoaderJar = new File(requireValue(arg, value));
+                case "--output-dir" -> options.outputDir = new File(requireValue(arg, value));
+                case "--nested-jar-cache" -> options.nestedJarCache = new File(requireValue(arg, value));
+                case "--batch" -> options.batch = new File(requireValue(arg, value));
+                case "--batch-jobs" -> options.batchJobs = Math.max(1, Integer.parseInt(requireValue(arg, value)));
+                case "--deflate-level" -> options.deflateLevel = parseLevel(arg, requireValue(arg, value));
+                case "--deflate-levels" -> {
+                    for (String level : requireValue(arg, value).split(",")) {
+                        String[] levelParts = level.split(":", 2);
+                        if (levelParts.length != 2) throw new IllegalArgumentException("Expected <extension>:<level> in " + arg);
+                        options.deflateLevels.put(levelParts[0], parseLevel(arg, levelParts[1]));
+                    }
+                }
+                case "--recompress" -> options.recompress = true;
+                case "--class-profile" -> {
+                    for (String file : requireValue(arg, value).split(",")) options.classProfiles.add(new File(file));
+                }
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if (options.incremental && options.stream) {
+            throw new IllegalArgumentException("--incremental reuses inner jars from the out directory and can't be combined with --stream");
+        }
+        if (options.delta && options.exploded) {
+            throw new IllegalArgumentException("--delta rebuilds entries while extracting, which doesn't happen with --exploded");
+        }
+        return options;
+    }
+
+    /**
+     * @return a deflate level from -1 (the default level) to 9, or {@link CompressionStrategy#STORED} for "stored"
+     */
+    private static int parseLevel(String arg, String value) {
+        if (value.equals("stored")) return CompressionStrategy.STORED;
+        int level = Integer.parseInt(value);
+        if (level < -1 || level > 9) throw new IllegalArgumentException("Deflate level in " + arg + " must be between -1 and 9, or stored");
+        return level;
+    }
+
+    private static String requireValue(String arg, String value) {
+        if (value == null) throw new IllegalArgumentException("Option " + arg + " requires a value");
+        return value;
+    }
+
+    /**
+     * @return the amount of worker threads used to scan jars and write partitions
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return whether inner jars are assembled in memory (or a spill file) and stored in the container directly,
+     * instead of being written to the out directory first
+     */
+    public boolean isStream() {
+        return stream;
+    }
+
+    /**
+     * @return the size in bytes an inner jar may take in memory before it's spilled to a temporary file
+     */
+    public int getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * @return whether hashes and inner jars of the previous build in the out directory are reused where their input is unchanged
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * @return whether inner jars are stored as directories in the container, so the loader can put them on the
+     * class path straight from the container instead of extracting them
+     */
+    public boolean isExploded() {
+        return exploded;
+    }
+
+    /**
+     * @return whether classes are compared without their source file, line numbers, local variables and constant pool
+     * order, so classes that were only recompiled are shared between versions. The versions sharing a class get the
+     * copy of one of them, so line numbers in stack traces can be off for the others.
+     */
+    public boolean isNormalizeClasses() {
+        return normalizeClasses;
+    }
+
+    /**
+     * @return whether entries that differ between versions are stored once, with patches for the other versions
+     */
+    public boolean isDelta() {
+        return delta;
+    }
+
+    /**
+     * @return how many duplicated bytes are worth one less class path entry for one version, 0 to only merge partitions
+     * to stay within {@link #getMaxJarsPerVersion()}
+     */
+    public long getClasspathEntryCost() {
+        return classpathEntryCost;
+    }
+
+    /**
+     * @return the most partitions a single version may load, partitions are merged until every version is within it
+     */
+    public int getMaxJarsPerVersion() {
+        return maxJarsPerVersion;
+    }
+
+    /**
+     * @return the most input jars that may have an open file handle at the same time
+     */
+    public int getMaxOpenJars() {
+        return maxOpenJars;
+    }
+
+    /**
+     * @return the most inner jars that may be written or waiting to be stored in the container at the same time
+     */
+    public int getMaxPendingJars() {
+        return maxPendingJars;
+    }
+
+    /**
+     * @return the size in bytes all inner jars together may take in memory before they're spilled to temporary files
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @return the directory with a jar of the mod for every version
+     */
+    public File getJarsDir() {
+        return jarsDir;
+    }
+
+    /**
+     * @return the directory inner jars are written to unless streaming, and where incremental builds keep their manifest
+     */
+    public File getOutDir() {
+        return outDir;
+    }
+
+    /**
+     * @return the loader jar that is nested in the container
+     */
+    public File getOmniLoaderJar() {
+        return omniLoaderJar;
+    }
+
+    /**
+     * @return the directory the container is written to
+     */
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    /**
+     * @return the directory nested jars are extracted to and reused from, also by later runs, or null to extract them
+     * from the source jar every time
+     */
+    public File getNestedJarCache() {
+        return nestedJarCache;
+    }
+
+    /**
+     * @return the manifest of mods to minify in one run, or null to minify the mod described by the other options
+     */
+    public File getBatch() {
+        return batch;
+    }
+
+    /**
+     * @return the amount of mods of a batch that are minified at the same time, each with its own memory budget,
+     * while sharing the worker threads
+     */
+    public int getBatchJobs() {
+        return batchJobs;
+    }
+
+    /**
+     * @return the deflate level of entries the minifier compresses itself, unless configured by extension
+     */
+    public int getDeflateLevel() {
+        return deflateLevel;
+    }
+
+    /**
+     * @return the deflate levels by file extension, such as {@code png:stored} for images that are compressed already
+     */
+    public Map<String, Integer> getDeflateLevels() {
+        return deflateLevels;
+    }
+
+    /**
+     * @return whether entries of inner jars are recompressed with the configured levels instead of copied as they are
+     */
+    public boolean isRecompress() {
+        return recompress;
+    }
+
+    /**
+     * @return the class load profiles written by the loader, used to put the classes that are loaded first at the
+     * start of their inner jar, and the inner jars with such classes at the start of the container
+     */
+    public List<File> getClassProfiles() {
+        return classProfiles;
+    }
+}
@@ -0,0 +1,79 @@
+package dev.dediamondpro.jarminifier;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Nested jars shared between mods, such as Fabric API modules, extracted once into a directory and reused by every mod
+ * that nests the same jar. Jars are identified by their name and the MD5 of their content, and a cached jar is only
+ * reused after checking that its content still has that hash, so a jar that was changed or only partially written
+ * is extracted again. The directory may be kept between runs.
+ */
+public class NestedJarCache {
+    private final File dir;
+    private final ConcurrentHashMap<String, FutureTask<File>> extractions = new ConcurrentHashMap<>();
+
+    public NestedJarCache(File dir) {
+        this.dir = dir;
+        dir.mkdirs();
+    }
+
+    /**
+     * Extracts the nested jar into the cache unless it's already there. When several mods need the same jar at the
+     * same time, one extracts it while the others wait.
+     *
+     * @param hash the MD5 of the nested jar
+     * @return the cached copy of the nested jar, which is never deleted by {@link SpillBuffer#delete()}
+     */
+    public SpillBuffer get(ZipReader jar, ZipReader.Entry entry, String hash) throws IOException {
+        String name = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+        String key = hash + "-" + name;
+        FutureTask<File> extraction = new FutureTask<>(() -> extract(jar, entry, key, hash));
+        FutureTask<File> existing = extractions.putIfAbsent(key, extraction);
+        if (existing == null) {
+            existing = extraction;
+            extraction.run();
+        }
+        try {
+            return SpillBuffer.existing(Parallel.await(existing), entry.getCrc(), entry.getSize());
+        } catch (IOException | RuntimeException e) {
+            // Let the next mod that needs the jar try again
+            extractions.remove(key, existing);
+            throw e;
+        }
+    }
+
+    private File extract(ZipReader jar, ZipReader.Entry entry, String key, String hash) throws IOException {
+        File file = new File(dir, key);
+        if (file.isFile() && file.length() == entry.getSize()) {
+            try (InputStream in = new FileInputStream(file)) {
+                if (DigestUtils.md5Hex(in).equals(hash)) return file;
+            }
+        }
+        // Extracted next to the final file and moved in place, so a run that's interrupted never leaves a partial jar behind
+        File temp = File.createTempFile(key, ".tmp", dir);
+        MessageDigest digest = DigestUtils.getMd5Digest();
+        try (InputStream in = new DigestInputStream(jar.getInputStream(entry), digest)) {
+            Files.copy(in, temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            String actual = Hex.encodeHexString(digest.digest());
+            if (!actual.equals(hash)) {
+                throw new IOException("Nested jar " + entry.getName() + " of " + jar.getName() + " has MD5 " + actual + " instead of " + hash);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        return file;
+    }
+}
@@ -0,0 +1,151 @@
+package dev.dediamondpro.jarminifier;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The jars nested in the input jars, grouped by content instead of by path. Versions that nest different jars under
+ * the same path each get their own copy, and a jar that is nested under different paths is stored once.
+ * Like {@link EntryIndex}, nested jars are only hashed when another one has the same CRC32 and size, unless every
+ * hash is needed to look them up in a {@link NestedJarCache}.
+ */
+public class NestedJarIndex {
+    private final List<Blob> blobs;
+
+    private NestedJarIndex(List<Blob> blobs) {
+        this.blobs = blobs;
+    }
+
+    /**
+     * @param nestedPaths the paths of the jars nested in each input jar, as listed in its fabric.mod.json
+     * @param hashAll     whether every nested jar is hashed, instead of only the ones that share their CRC32 and size
+     */
+    public static NestedJarIndex build(List<ZipReader> jars, List<List<String>> nestedPaths, boolean hashAll, ExecutorService executor) throws IOException {
+        LinkedHashMap<String, List<Candidate>> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < jars.size(); i++) {
+            for (String path : nestedPaths.get(i)) {
+                ZipReader.Entry entry = jars.get(i).getEntry(path);
+                if (entry == null) {
+                    System.err.println("Nested jar " + path + " is missing from " + jars.get(i).getName());
+                    continue;
+                }
+                buckets.computeIfAbsent(entry.getCrc() + ":" + entry.getSize(), key -> new ArrayList<>()).add(new Candidate(i, path, entry));
+            }
+        }
+        ArrayList<Callable<Void>> hashTasks = new ArrayList<>();
+        for (List<Candidate> bucket : buckets.values()) {
+            if (bucket.size() == 1 && !hashAll) continue;
+            for (Candidate candidate : bucket) {
+                hashTasks.add(() -> {
+                    try (InputStream in = jars.get(candidate.jar).getInputStream(candidate.entry)) {
+                        candidate.hash = DigestUtils.md5Hex(in);
+                    }
+                    return null;
+                });
+            }
+        }
+        Parallel.invokeAll(executor, hashTasks);
+        LinkedHashMap<String, Blob> blobs = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Candidate>> bucket : buckets.entrySet()) {
+            for (Candidate candidate : bucket.getValue()) {
+                // Only the CRC32 and size when that's unique, so the names don't depend on whether everything was hashed
+                String key = bucket.getValue().size() == 1 ? bucket.getKey() : bucket.getKey() + ":" + candidate.hash;
+                blobs.computeIfAbsent(key, it -> new Blob(it, jars.get(candidate.jar), candidate.path, candidate.entry, candidate.hash))
+                        .jars.set(candidate.jar);
+            }
+        }
+        // Stored in the order they are first nested in, like they were when nested jars were looked up by path
+        ArrayList<Blob> sorted = new ArrayList<>(blobs.values());
+        sorted.sort(Comparator.comparingInt((Blob blob) -> blob.jars.nextSetBit(0))
+                .thenComparingInt(blob -> nestedPaths.get(blob.jars.nextSetBit(0)).indexOf(blob.path)));
+        HashSet<String> names = new HashSet<>();
+        for (Blob blob : sorted) {
+            String hash = DigestUtils.md5Hex(blob.key);
+            blob.name = hash.substring(0, 8) + "-" + blob.getFileName();
+            if (!names.add(blob.name)) {
+                blob.name = hash + "-" + blob.getFileName();
+                names.add(blob.name);
+            }
+        }
+        return new NestedJarIndex(sorted);
+    }
+
+    public List<Blob> getBlobs() {
+        return blobs;
+    }
+
+    /**
+     * A nested jar with the input jars that nest it.
+     */
+    public static class Blob {
+        private final String key;
+        private final ZipReader jar;
+        private final String path;
+        private final ZipReader.Entry entry;
+        private final String hash;
+        private final BitSet jars = new BitSet();
+        private String name;
+
+        private Blob(String key, ZipReader jar, String path, ZipReader.Entry entry, String hash) {
+            this.key = key;
+            this.jar = jar;
+            this.path = path;
+            this.entry = entry;
+            this.hash = hash;
+        }
+
+        /**
+         * @return the first input jar that nests this jar, which the content is read from
+         */
+        public ZipReader getJar() {
+            return jar;
+        }
+
+        public ZipReader.Entry getEntry() {
+            return entry;
+        }
+
+        /**
+         * @return the MD5 of the nested jar, or null if it wasn't hashed
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * @return the file name the first input jar nests this jar under
+         */
+        public String getFileName() {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        /**
+         * @return the file name prefixed with a short hash of the content, unique among the nested jars
+         */
+        public String getName() {
+            return name;
+        }
+
+        public BitSet getJars() {
+            return jars;
+        }
+    }
+
+    private static class Candidate {
+        private final int jar;
+        private final String path;
+        private final ZipReader.Entry entry;
+        private String hash;
+
+        private Candidate(int jar, String path, ZipReader.Entry entry) {
+            this.jar = jar;
+            this.path = path;
+            this.entry = entry;
+        }
+    }
+}
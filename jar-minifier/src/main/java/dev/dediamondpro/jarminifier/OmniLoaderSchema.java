@@ -1,18 +1,20 @@
 package dev.dediamondpro.jarminifier;
 
+import com.google.gson.JsonObject;
+
 import java.util.ArrayList;
 import java.util.List;
 
 public class OmniLoaderSchema {
     private final int schemaVersion;
     private final ArrayList<Jar> jars;
+    private VersionIndex versionIndex;
 
     public OmniLoaderSchema(int schemaVersion, ArrayList<Jar> jars) {
         this.schemaVersion = schemaVersion;
         this.jars = jars;
     }
 
-
     public int getSchemaVersion() {
         return schemaVersion;
     }
@@ -21,17 +23,32 @@ public class OmniLoaderSchema {
         return jars;
     }
 
+    public VersionIndex getVersionIndex() {
+        return versionIndex;
+    }
+
+    public void setVersionIndex(VersionIndex versionIndex) {
+        this.versionIndex = versionIndex;
+    }
+
     public static class Jar {
         private final String path;
         private final List<String> versions;
         private final List<String> loaders;
         private final boolean isPrimary;
+        private final List<Delta> deltas;
+        private JsonObject fabricModJson;
 
         public Jar(String path, List<String> versions, List<String> loaders, boolean isPrimary) {
+            this(path, versions, loaders, isPrimary, null);
+        }
+
+        public Jar(String path, List<String> versions, List<String> loaders, boolean isPrimary, List<Delta> deltas) {
             this.path = path;
             this.versions = versions;
             this.loaders = loaders;
             this.isPrimary = isPrimary;
+            this.deltas = deltas;
         }
 
         public String getPath() {
@@ -49,5 +66,51 @@ public class OmniLoaderSchema {
         public boolean isPrimary() {
             return isPrimary;
         }
+
+        public List<Delta> getDeltas() {
+            return deltas;
+        }
+
+        public JsonObject getFabricModJson() {
+            return fabricModJson;
+        }
+
+        /**
+         * Embeds the jar's fabric.mod.json, so the loader has its metadata without reading it from the jar.
+         */
+        public void setFabricModJson(JsonObject fabricModJson) {
+            this.fabricModJson = fabricModJson;
+        }
+    }
+
+    /**
+     * An entry of a jar that isn't stored in the jar itself, but has to be rebuilt from a base in the container,
+     * optionally with a patch applied to it.
+     */
+    public static class Delta {
+        private final String name;
+        private final String base;
+        private final String patch;
+
+        public Delta(String name, String base, String patch) {
+            this.name = name;
+            this.base = base;
+            this.patch = patch;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getBase() {
+            return base;
+        }
+
+        /**
+         * @return the path of the patch to apply to the base, or null if the entry is the base itself
+         */
+        public String getPatch() {
+            return patch;
+        }
     }
 }
\ No newline at end of file
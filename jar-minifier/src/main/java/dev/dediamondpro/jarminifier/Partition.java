@@ -0,0 +1,60 @@
+package dev.dediamondpro.jarminifier;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A jar that will be written to the container, holding every entry shared by exactly the jars in {@link #getJars()}.
+ */
+public class Partition {
+    private final String identifier;
+    private final BitSet jars;
+    private final ArrayList<Entry> entries = new ArrayList<>();
+    private final ArrayList<OmniLoaderSchema.Delta> deltas = new ArrayList<>();
+
+    public Partition(String identifier, BitSet jars) {
+        this.identifier = identifier;
+        this.jars = jars;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public BitSet getJars() {
+        return jars;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return the entries of this partition that are delta encoded, so not stored in it directly
+     */
+    public List<OmniLoaderSchema.Delta> getDeltas() {
+        return deltas;
+    }
+
+    public static class Entry {
+        private final int jar;
+        private final ZipReader.Entry entry;
+
+        public Entry(int jar, ZipReader.Entry entry) {
+            this.jar = jar;
+            this.entry = entry;
+        }
+
+        /**
+         * @return the index of the input jar the entry is copied from
+         */
+        public int getJar() {
+            return jar;
+        }
+
+        public ZipReader.Entry getEntry() {
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package dev.dediamondpro.jarminifier;
+
+import java.util.*;
+
+/**
+ * Merges small partitions away, since every partition is another class path entry the class loader has to search
+ * for every version that loads it. A partition is dissolved by copying its entries into partitions of subsets of its
+ * jars that together cover each of its jars exactly once, creating single-version partitions where needed.
+ * No other partition of those jars can have an entry with the same name, so the copies never conflict.
+ */
+public class PartitionPlanner {
+    private final LinkedHashMap<String, Partition> partitions;
+    private final EntryIndex index;
+    private final long classpathEntryCost;
+    private int dissolved = 0;
+    private long duplicatedBytes = 0;
+
+    private PartitionPlanner(LinkedHashMap<String, Partition> partitions, EntryIndex index, long classpathEntryCost) {
+        this.partitions = partitions;
+        this.index = index;
+        this.classpathEntryCost = classpathEntryCost;
+    }
+
+    /**
+     * Dissolves every partition where the class path entries it saves are worth more than the bytes it duplicates,
+     * then keeps dissolving the smallest partitions of every version that still loads more than maxJarsPerVersion jars.
+     *
+     * @param classpathEntryCost how many duplicated bytes one less class path entry for one version is worth
+     */
+    public static void plan(LinkedHashMap<String, Partition> partitions, EntryIndex index, long classpathEntryCost, int maxJarsPerVersion) {
+        PartitionPlanner planner = new PartitionPlanner(partitions, index, classpathEntryCost);
+        planner.dissolveCheap();
+        for (int jar = 0; jar < index.getJarCount(); jar++) planner.limit(jar, maxJarsPerVersion);
+        if (planner.dissolved > 0) {
+            System.out.println("Partition planner dissolved " + planner.dissolved + " partitions, duplicating " + planner.duplicatedBytes + " bytes");
+        }
+    }
+
+    private void dissolveCheap() {
+        if (classpathEntryCost <= 0) return;
+        // Smallest first, since dissolving them is the cheapest and can make larger ones worth keeping as targets
+        ArrayList<Partition> candidates = new ArrayList<>(partitions.values());
+        candidates.sort(Comparator.comparingLong(PartitionPlanner::size));
+        for (Partition partition : candidates) {
+            if (partition.getJars().cardinality() < 2 || !partitions.containsKey(partition.getIdentifier())) continue;
+            List<BitSet> cover = cover(partition);
+            int created = 0;
+            for (BitSet piece : cover) {
+                if (!partitions.containsKey(index.getIdentifier(piece))) created++;
+            }
+            long savedEntries = partition.getJars().cardinality() - created;
+            long duplicated = (cover.size() - 1) * size(partition);
+            if (savedEntries * classpathEntryCost > duplicated) dissolve(partition, cover);
+        }
+    }
+
+    private void limit(int jar, int maxJarsPerVersion) {
+        while (true) {
+            Partition smallest = null;
+            int count = 0;
+            for (Partition partition : partitions.values()) {
+                if (!partition.getJars().get(jar)) continue;
+                count++;
+                if (partition.getJars().cardinality() < 2) continue;
+                if (smallest == null || size(partition) < size(smallest)) smallest = partition;
+            }
+            if (count <= maxJarsPerVersion || smallest == null) return;
+            dissolve(smallest, cover(smallest));
+        }
+    }
+
+    /**
+     * @return disjoint subsets of the partition's jars that cover all of them, preferring existing partitions with the most jars
+     */
+    private List<BitSet> cover(Partition partition) {
+        BitSet remaining = (BitSet) partition.getJars().clone();
+        ArrayList<Partition> subsets = new ArrayList<>();
+        for (Partition other : partitions.values()) {
+            if (other == partition) continue;
+            BitSet outside = (BitSet) other.getJars().clone();
+            outside.andNot(partition.getJars());
+            if (outside.isEmpty()) subsets.add(other);
+        }
+        subsets.sort(Comparator.comparingInt((Partition other) -> other.getJars().cardinality()).reversed());
+        ArrayList<BitSet> cover = new ArrayList<>();
+        for (Partition subset : subsets) {
+            BitSet taken = (BitSet) subset.getJars().clone();
+            taken.andNot(remaining);
+            if (!taken.isEmpty()) continue;
+            cover.add(subset.getJars());
+            remaining.andNot(subset.getJars());
+        }
+        for (int jar = remaining.nextSetBit(0); jar >= 0; jar = remaining.nextSetBit(jar + 1)) {
+            BitSet single = new BitSet();
+            single.set(jar);
+            cover.add(single);
+        }
+        return cover;
+    }
+
+    private void dissolve(Partition partition, List<BitSet> cover) {
+        partitions.remove(partition.getIdentifier());
+        for (BitSet piece : cover) {
+            Partition target = partitions.computeIfAbsent(index.getIdentifier(piece), identifier -> new Partition(identifier, piece));
+            target.getEntries().addAll(partition.getEntries());
+            target.getDeltas().addAll(partition.getDeltas());
+        }
+        dissolved++;
+        duplicatedBytes += (cover.size() - 1) * size(partition);
+    }
+
+    private static long size(Partition partition) {
+        long size = 0;
+        for (Partition.Entry entry : partition.getEntries()) size += entry.getEntry().getCompressedSize();
+        return size;
+    }
+}
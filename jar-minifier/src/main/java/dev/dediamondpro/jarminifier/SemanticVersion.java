@@ -0,0 +1,93 @@
+package dev.dediamondpro.jarminifier;
+
+/**
+ * Semantic version that is ordered the same way as Fabric Loader's SemanticVersion, so boundaries sorted by the
+ * minifier can be binary searched by the loader using Fabric's own comparison.
+ */
+public class SemanticVersion implements Comparable<SemanticVersion> {
+    private final String string;
+    private final int[] components;
+    private final String prerelease;
+
+    private SemanticVersion(String string, int[] components, String prerelease) {
+        this.string = string;
+        this.components = components;
+        this.prerelease = prerelease;
+    }
+
+    /**
+     * @return the parsed version, or null if it isn't a plain semantic version (for example when it contains wildcards)
+     */
+    public static SemanticVersion parse(String string) {
+        String version = string;
+        int buildStart = version.indexOf('+');
+        if (buildStart != -1) version = version.substring(0, buildStart);
+        String prerelease = null;
+        int prereleaseStart = version.indexOf('-');
+        if (prereleaseStart != -1) {
+            prerelease = version.substring(prereleaseStart + 1);
+            version = version.substring(0, prereleaseStart);
+            if (prerelease.isEmpty()) return null;
+        }
+        String[] parts = version.split("\\.", -1);
+        int[] components = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            if (parts[i].isEmpty() || !parts[i].chars().allMatch(Character::isDigit)) return null;
+            try {
+                components[i] = Integer.parseInt(parts[i]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return new SemanticVersion(string, components, prerelease);
+    }
+
+    /**
+     * @return the lowest version that has the given components, which sorts below all of its pre-releases
+     */
+    public static SemanticVersion lowest(int... components) {
+        StringBuilder string = new StringBuilder();
+        for (int component : components) {
+            if (string.length() > 0) string.append('.');
+            string.append(component);
+        }
+        return new SemanticVersion(string.append("-0").toString(), components, "0");
+    }
+
+    public int getComponent(int index) {
+        return index < components.length ? components[index] : 0;
+    }
+
+    @Override
+    public int compareTo(SemanticVersion other) {
+        for (int i = 0; i < Math.max(components.length, other.components.length); i++) {
+            int result = Integer.compare(getComponent(i), other.getComponent(i));
+            if (result != 0) return result;
+        }
+        if (prerelease == null || other.prerelease == null) {
+            if (prerelease == null && other.prerelease == null) return 0;
+            return prerelease == null ? 1 : -1;
+        }
+        String[] parts = prerelease.split("\\.");
+        String[] otherParts = other.prerelease.split("\\.");
+        for (int i = 0; i < Math.min(parts.length, otherParts.length); i++) {
+            boolean numeric = isNumeric(parts[i]);
+            boolean otherNumeric = isNumeric(otherParts[i]);
+            int result;
+            if (numeric && otherNumeric) result = Integer.compare(Integer.parseInt(parts[i]), Integer.parseInt(otherParts[i]));
+            else if (numeric || otherNumeric) result = numeric ? -1 : 1;
+            else result = parts[i].compareTo(otherParts[i]);
+            if (result != 0) return result;
+        }
+        return Integer.compare(parts.length, otherParts.length);
+    }
+
+    private static boolean isNumeric(String part) {
+        return !part.isEmpty() && part.length() < 10 && part.chars().allMatch(Character::isDigit);
+    }
+
+    @Override
+    public String toString() {
+        return string;
+    }
+}
@@ -0,0 +1,116 @@
+package dev.dediamondpro.jarminifier;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+/**
+ * Buffer for an inner jar that is kept in memory until it grows past a limit, after which it spills to a temporary file.
+ * The CRC32 and size are tracked while writing, so the content can be stored in the container without another pass.
+ */
+public class SpillBuffer extends OutputStream {
+    private final int memoryLimit;
+    private final MemoryBudget budget;
+    private final boolean keepFile;
+    private final CRC32 crc = new CRC32();
+    private final long existingCrc;
+    private ByteArrayOutputStream memory;
+    private File file;
+    private OutputStream fileOut;
+    private long size;
+
+    /**
+     * Creates a buffer that spills to a temporary file once more than memoryLimit bytes are written.
+     */
+    public SpillBuffer(int memoryLimit) {
+        this(memoryLimit, null);
+    }
+
+    /**
+     * Creates a buffer that spills to a temporary file once more than memoryLimit bytes are written,
+     * or once the budget it shares with other buffers is used up.
+     */
+    public SpillBuffer(int memoryLimit, MemoryBudget budget) {
+        this(memoryLimit, budget, null, false, -1, 0);
+        this.memory = new ByteArrayOutputStream();
+    }
+
+    private SpillBuffer(int memoryLimit, MemoryBudget budget, File file, boolean keepFile, long existingCrc, long size) {
+        this.memoryLimit = memoryLimit;
+        this.budget = budget;
+        this.file = file;
+        this.keepFile = keepFile;
+        this.existingCrc = existingCrc;
+        this.size = size;
+    }
+
+    /**
+     * Creates a buffer that writes straight to the given file, which is kept after {@link #delete()}.
+     */
+    public static SpillBuffer toFile(File file) throws IOException {
+        SpillBuffer buffer = new SpillBuffer(0, null, file, true, -1, 0);
+        buffer.fileOut = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+        return buffer;
+    }
+
+    /**
+     * Wraps a file that was written by a previous build, with its known CRC32 and size.
+     */
+    public static SpillBuffer existing(File file, long crc, long size) {
+        return new SpillBuffer(0, null, file, true, crc, size);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (memory != null && (memory.size() + len > memoryLimit || budget != null && !budget.reserve(len))) {
+            file = Files.createTempFile("jar-minifier", ".jar").toFile();
+            fileOut = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+            memory.writeTo(fileOut);
+            if (budget != null) budget.free(memory.size());
+            memory = null;
+        }
+        if (memory != null) memory.write(b, off, len);
+        else fileOut.write(b, off, len);
+        crc.update(b, off, len);
+        size += len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileOut != null) fileOut.close();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getCrc() {
+        return existingCrc != -1 ? existingCrc : crc.getValue();
+    }
+
+    /**
+     * @return the file the content is in, or null if it's still in memory
+     */
+    public File getFile() {
+        return memory == null ? file : null;
+    }
+
+    public InputStream getInputStream() throws IOException {
+        if (memory != null) return new ByteArrayInputStream(memory.toByteArray());
+        return new FileInputStream(file);
+    }
+
+    /**
+     * Releases the buffered content, deleting the spill file if one was created by this buffer.
+     */
+    public void delete() throws IOException {
+        if (memory != null && budget != null) budget.free(memory.size());
+        memory = null;
+        if (file != null && !keepFile) Files.deleteIfExists(file.toPath());
+    }
+}
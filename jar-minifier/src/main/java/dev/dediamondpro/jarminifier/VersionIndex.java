@@ -0,0 +1,149 @@
+package dev.dediamondpro.jarminifier;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Precomputed mapping from Minecraft versions to the jars of a schema, so the loader can select its jars with one
+ * binary search instead of parsing every version predicate on every launch.
+ * The sorted boundaries split all versions into ranges: before the first boundary, each boundary itself and each gap
+ * between two boundaries, so range 2i + 1 is boundary i and range 2i is the gap before it.
+ * Every range lists the indices of the jars that should be loaded for versions in it.
+ */
+public class VersionIndex {
+    private static final String[] OPERATORS = {">=", "<=", ">", "<", "=", "~", "^"};
+
+    private final List<String> boundaries;
+    private final List<List<Integer>> ranges;
+
+    private VersionIndex(List<String> boundaries, List<List<Integer>> ranges) {
+        this.boundaries = boundaries;
+        this.ranges = ranges;
+    }
+
+    /**
+     * @return the index for the given jars, or null if one of their version predicates isn't supported by the index
+     */
+    public static VersionIndex build(List<OmniLoaderSchema.Jar> jars) {
+        HashMap<String, Interval> intervals = new HashMap<>();
+        ArrayList<SemanticVersion> boundaries = new ArrayList<>();
+        for (OmniLoaderSchema.Jar jar : jars) {
+            for (String predicate : jar.getVersions()) {
+                if (intervals.containsKey(predicate)) continue;
+                Interval interval = parsePredicate(predicate);
+                if (interval == null) {
+                    System.out.println("Not generating a version index, unsupported version predicate: " + predicate);
+                    return null;
+                }
+                intervals.put(predicate, interval);
+                if (interval.min != null) boundaries.add(interval.min);
+                if (interval.max != null) boundaries.add(interval.max);
+            }
+        }
+        boundaries.sort(null);
+        ArrayList<SemanticVersion> distinct = new ArrayList<>();
+        for (SemanticVersion boundary : boundaries) {
+            if (distinct.isEmpty() || distinct.get(distinct.size() - 1).compareTo(boundary) != 0) distinct.add(boundary);
+        }
+        ArrayList<List<Integer>> ranges = new ArrayList<>();
+        for (int range = 0; range <= distinct.size() * 2; range++) {
+            ArrayList<Integer> rangeJars = new ArrayList<>();
+            for (int i = 0; i < jars.size(); i++) {
+                for (String predicate : jars.get(i).getVersions()) {
+                    Interval interval = intervals.get(predicate);
+                    boolean matches = range % 2 == 1
+                            ? interval.contains(distinct.get(range / 2))
+                            : interval.containsGap(range == 0 ? null : distinct.get(range / 2 - 1), range / 2 == distinct.size() ? null : distinct.get(range / 2));
+                    if (matches) {
+                        rangeJars.add(i);
+                        break;
+                    }
+                }
+            }
+            ranges.add(rangeJars);
+        }
+        return new VersionIndex(distinct.stream().map(SemanticVersion::toString).toList(), ranges);
+    }
+
+    /**
+     * Parses a version predicate the same way Fabric Loader does: terms separated by spaces must all match.
+     *
+     * @return the versions matched by the predicate, or null if it uses something the index doesn't support
+     */
+    private static Interval parsePredicate(String predicate) {
+        Interval result = new Interval(null, false, null, false);
+        for (String term : predicate.split(" ")) {
+            term = term.trim();
+            if (term.isEmpty() || term.equals("*")) continue;
+            String operator = "=";
+            for (String candidate : OPERATORS) {
+                if (term.startsWith(candidate)) {
+                    operator = candidate;
+                    term = term.substring(candidate.length());
+                    break;
+                }
+            }
+            SemanticVersion version = SemanticVersion.parse(term);
+            if (version == null) return null;
+            Interval interval = switch (operator) {
+                case ">=" -> new Interval(version, true, null, false);
+                case "<=" -> new Interval(null, false, version, true);
+                case ">" -> new Interval(version, false, null, false);
+                case "<" -> new Interval(null, false, version, false);
+                case "~" -> new Interval(version, true, SemanticVersion.lowest(version.getComponent(0), version.getComponent(1) + 1), false);
+                case "^" -> new Interval(version, true, SemanticVersion.lowest(version.getComponent(0) + 1), false);
+                default -> new Interval(version, true, version, true);
+            };
+            result = result.intersect(interval);
+        }
+        return result;
+    }
+
+    /**
+     * Versions between a minimum and a maximum, where null means unbounded.
+     */
+    private static class Interval {
+        private final SemanticVersion min;
+        private final boolean minInclusive;
+        private final SemanticVersion max;
+        private final boolean maxInclusive;
+
+        private Interval(SemanticVersion min, boolean minInclusive, SemanticVersion max, boolean maxInclusive) {
+            this.min = min;
+            this.minInclusive = minInclusive;
+            this.max = max;
+            this.maxInclusive = maxInclusive;
+        }
+
+        private Interval intersect(Interval other) {
+            SemanticVersion newMin = min;
+            boolean newMinInclusive = minInclusive;
+            if (newMin == null || other.min != null && (other.min.compareTo(newMin) > 0 || other.min.compareTo(newMin) == 0 && !other.minInclusive)) {
+                newMin = other.min;
+                newMinInclusive = other.minInclusive;
+            }
+            SemanticVersion newMax = max;
+            boolean newMaxInclusive = maxInclusive;
+            if (newMax == null || other.max != null && (other.max.compareTo(newMax) < 0 || other.max.compareTo(newMax) == 0 && !other.maxInclusive)) {
+                newMax = other.max;
+                newMaxInclusive = other.maxInclusive;
+            }
+            return new Interval(newMin, newMinInclusive, newMax, newMaxInclusive);
+        }
+
+        private boolean contains(SemanticVersion version) {
+            int minResult = min == null ? 1 : version.compareTo(min);
+            int maxResult = max == null ? -1 : version.compareTo(max);
+            return (minResult > 0 || minResult == 0 && minInclusive) && (maxResult < 0 || maxResult == 0 && maxInclusive);
+        }
+
+        /**
+         * @return whether all versions strictly between the two boundaries match, null meaning unbounded.
+         * Since the interval's own ends are boundaries, either all or none of them do.
+         */
+        private boolean containsGap(SemanticVersion from, SemanticVersion to) {
+            return (min == null || from != null && min.compareTo(from) <= 0) && (max == null || to != null && max.compareTo(to) >= 0);
+        }
+    }
+}
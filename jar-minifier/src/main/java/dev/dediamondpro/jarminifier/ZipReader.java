@@ -0,0 +1,326 @@
+package dev.dediamondpro.jarminifier;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Minimal zip reader that exposes the central directory and the raw, still compressed, data of every entry,
+ * so entries can be copied to another zip without inflating and deflating them again.
+ * All reads are positional, so a reader can be shared between threads.
+ * A reader either keeps its own file open, or borrows a handle from {@link FileHandles} for every read.
+ */
+public class ZipReader implements Closeable {
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+
+    private final File file;
+    private final FileChannel channel;
+    private final FileHandles handles;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    public ZipReader(File file) throws IOException {
+        this(file, null);
+    }
+
+    /**
+     * @param handles the handles to read the file with, or null to keep the file open until the reader is closed
+     */
+    public ZipReader(File file, FileHandles handles) throws IOException {
+        this.file = file;
+        this.handles = handles;
+        this.channel = handles == null ? FileChannel.open(file.toPath(), StandardOpenOption.READ) : null;
+        try {
+            readCentralDirectory();
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) channel.close();
+            throw e;
+        }
+    }
+
+    private FileChannel acquire() throws IOException {
+        return handles == null ? channel : handles.acquire(file);
+    }
+
+    private void release() {
+        if (handles != null) handles.release(file);
+    }
+
+    private void readCentralDirectory() throws IOException {
+        long size;
+        FileChannel channel = acquire();
+        try {
+            size = channel.size();
+        } finally {
+            release();
+        }
+        int tailSize = (int) Math.min(size, 0xFFFF + 22);
+        ByteBuffer tail = read(size - tailSize, tailSize);
+        int end = -1;
+        for (int i = tailSize - 22; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1) throw new ZipFormatException(file + " is not a zip file");
+        int count = Short.toUnsignedInt(tail.getShort(end + 10));
+        long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+        long directoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+        if (count == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+            throw new ZipFormatException(file + " is a ZIP64 archive, which is not supported");
+        }
+        ByteBuffer directory = read(directoryOffset, (int) directorySize);
+        for (int i = 0; i < count; i++) {
+            if (directory.getInt() != CENTRAL_DIRECTORY_HEADER) {
+                throw new ZipFormatException("Invalid central directory header in " + file);
+            }
+            directory.position(directory.position() + 4);
+            int flags = Short.toUnsignedInt(directory.getShort());
+            int method = Short.toUnsignedInt(directory.getShort());
+            int dosTime = directory.getInt();
+            long crc = Integer.toUnsignedLong(directory.getInt());
+            long compressedSize = Integer.toUnsignedLong(directory.getInt());
+            long uncompressedSize = Integer.toUnsignedLong(directory.getInt());
+            int nameLength = Short.toUnsignedInt(directory.getShort());
+            int extraLength = Short.toUnsignedInt(directory.getShort());
+            int commentLength = Short.toUnsignedInt(directory.getShort());
+            directory.position(directory.position() + 8);
+            long localHeaderOffset = Integer.toUnsignedLong(directory.getInt());
+            byte[] name = new byte[nameLength];
+            directory.get(name);
+            byte[] extra = new byte[extraLength];
+            directory.get(extra);
+            directory.position(directory.position() + commentLength);
+            if ((flags & 1) != 0) throw new ZipFormatException("Encrypted entries are not supported (" + file + ")");
+            if (compressedSize == 0xFFFFFFFFL || uncompressedSize == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+                throw new ZipFormatException(file + " is a ZIP64 archive, which is not supported");
+            }
+            Entry entry = new Entry(new String(name, StandardCharsets.UTF_8), method, dosTime, crc, compressedSize, uncompressedSize, extra, localHeaderOffset);
+            entries.putIfAbsent(entry.getName(), entry);
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        FileChannel channel = acquire();
+        try {
+            return read(channel, position, length);
+        } finally {
+            release();
+        }
+    }
+
+    private ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) throw new EOFException("Unexpected end of " + file);
+        }
+        return buffer.flip();
+    }
+
+    public String getName() {
+        return file.getPath();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * @return a stream of the entry's data as stored in the zip, so still compressed if the entry is deflated
+     */
+    public InputStream getRawInputStream(Entry entry) throws IOException {
+        // The handle is held until the stream is closed
+        FileChannel channel = acquire();
+        try {
+            return new RegionInputStream(channel, getDataOffset(channel, entry), entry.getCompressedSize());
+        } catch (IOException | RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return a stream of the entry's uncompressed data
+     */
+    public InputStream getInputStream(Entry entry) throws IOException {
+        InputStream raw = getRawInputStream(entry);
+        if (entry.getMethod() == ZipEntry.STORED) return raw;
+        if (entry.getMethod() != ZipEntry.DEFLATED) {
+            throw new ZipFormatException("Unsupported compression method " + entry.getMethod() + " for " + entry.getName() + " in " + file);
+        }
+        Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(raw, inflater, 8192) {
+            private boolean closed = false;
+            private boolean eof = false;
+
+            @Override
+            protected void fill() throws IOException {
+                if (eof) throw new EOFException("Unexpected end of " + entry.getName() + " in " + file);
+                len = in.read(buf, 0, buf.length);
+                if (len == -1) {
+                    // Inflaters created with nowrap may need an extra dummy byte to finish, the same as ZipFile does
+                    buf[0] = 0;
+                    len = 1;
+                    eof = true;
+                }
+                inf.setInput(buf, 0, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+                super.close();
+                inflater.end();
+            }
+        };
+    }
+
+    private long getDataOffset(FileChannel channel, Entry entry) throws IOException {
+        if (entry.dataOffset != -1) return entry.dataOffset;
+        ByteBuffer header = read(channel, entry.getLocalHeaderOffset(), 30);
+        if (header.getInt(0) != LOCAL_FILE_HEADER) {
+            throw new ZipFormatException("Invalid local header for " + entry.getName() + " in " + file);
+        }
+        int nameLength = Short.toUnsignedInt(header.getShort(26));
+        int extraLength = Short.toUnsignedInt(header.getShort(28));
+        entry.dataOffset = entry.getLocalHeaderOffset() + 30 + nameLength + extraLength;
+        return entry.dataOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) channel.close();
+    }
+
+    private class RegionInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+        private boolean closed = false;
+
+        private RegionInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : Byte.toUnsignedInt(single[0]);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int count = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+            if (count == -1) throw new EOFException("Unexpected end of " + file);
+            position += count;
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            release();
+        }
+    }
+
+    public static class Entry {
+        private final String name;
+        private final int method;
+        private final int dosTime;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final byte[] extra;
+        private final long localHeaderOffset;
+        private volatile long dataOffset = -1;
+
+        private Entry(String name, int method, int dosTime, long crc, long compressedSize, long size, byte[] extra, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.extra = extra;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        /**
+         * @return the compression method, either {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        /**
+         * @return the last modification time in MS-DOS format, as stored in the zip
+         */
+        public int getDosTime() {
+            return dosTime;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public byte[] getExtra() {
+            return extra;
+        }
+
+        public long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+    }
+
+    public static class ZipFormatException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public ZipFormatException(String message) {
+            super(message);
+        }
+    }
+}
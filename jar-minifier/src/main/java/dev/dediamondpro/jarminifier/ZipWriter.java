@@ -0,0 +1,233 @@
+package dev.dediamondpro.jarminifier;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Minimal zip writer counterpart of {@link ZipReader}, which can write entries whose data is already compressed.
+ * Since the CRC and sizes are always known before the data is written, no data descriptors are needed.
+ */
+public class ZipWriter implements Closeable {
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+    private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int UTF8_FLAG = 1 << 11;
+
+    private final DataOutputStream out;
+    private final ArrayList<WrittenEntry> written = new ArrayList<>();
+    private final HashSet<String> names = new HashSet<>();
+    private long offset = 0;
+
+    public ZipWriter(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+    }
+
+    /**
+     * Copies an entry, including its compressed data, CRC and sizes, from the source zip without recompressing it.
+     */
+    public void copyRaw(ZipReader source, ZipReader.Entry entry) throws IOException {
+        copyRaw(source, entry, entry.getName());
+    }
+
+    /**
+     * Copies an entry like {@link #copyRaw(ZipReader, ZipReader.Entry)}, but stores it under a different name.
+     */
+    public void copyRaw(ZipReader source, ZipReader.Entry entry, String name) throws IOException {
+        try (InputStream in = source.getRawInputStream(entry)) {
+            writeRaw(name, entry.getMethod(), entry.getDosTime(), entry.getCrc(), entry.getCompressedSize(), entry.getSize(), stripZip64(entry.getExtra()), in);
+        }
+    }
+
+    /**
+     * Writes an entry whose data is already in its final (compressed) form.
+     */
+    public void writeRaw(String name, int method, int dosTime, long crc, long compressedSize, long size, byte[] extra, InputStream data) throws IOException {
+        if (!names.add(name)) throw new ZipReader.ZipFormatException("Duplicate entry: " + name);
+        if (compressedSize >= 0xFFFFFFFFL || size >= 0xFFFFFFFFL || offset >= 0xFFFFFFFFL) {
+            throw new ZipReader.ZipFormatException("Entry " + name + " would require ZIP64, which is not supported");
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        WrittenEntry entry = new WrittenEntry(nameBytes, method, dosTime, crc, compressedSize, size, extra, offset);
+        out.writeInt(Integer.reverseBytes(LOCAL_FILE_HEADER));
+        writeShort(versionNeeded(method));
+        writeShort(UTF8_FLAG);
+        writeShort(method);
+        out.writeInt(Integer.reverseBytes(dosTime));
+        out.writeInt(Integer.reverseBytes((int) crc));
+        out.writeInt(Integer.reverseBytes((int) compressedSize));
+        out.writeInt(Integer.reverseBytes((int) size));
+        writeShort(nameBytes.length);
+        writeShort(extra.length);
+        out.write(nameBytes);
+        out.write(extra);
+        long copied = data.transferTo(out);
+        if (copied != compressedSize) {
+            throw new ZipReader.ZipFormatException("Expected " + compressedSize + " bytes for " + name + " but got " + copied);
+        }
+        offset += 30 + nameBytes.length + extra.length + compressedSize;
+        written.add(entry);
+    }
+
+    /**
+     * Writes an entry uncompressed, such as an inner jar that is already compressed itself.
+     */
+    public void writeStored(String name, int dosTime, SpillBuffer data) throws IOException {
+        try (InputStream in = data.getInputStream()) {
+            writeRaw(name, ZipEntry.STORED, dosTime, data.getCrc(), data.getSize(), data.getSize(), new byte[0], in);
+        }
+    }
+
+    /**
+     * Writes an entry deflated with the default compression level.
+     */
+    public void writeDeflated(String name, int dosTime, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        byte[] compressed = CompressionStrategy.deflate(data, Deflater.DEFAULT_COMPRESSION);
+        writeRaw(name, ZipEntry.DEFLATED, dosTime, crc.getValue(), compressed.length, data.length, new byte[0], new ByteArrayInputStream(compressed));
+    }
+
+    /**
+     * Writes an entry compressed the way the strategy decides for its name.
+     */
+    public void write(String name, int dosTime, byte[] data, CompressionStrategy compression) throws IOException {
+        write(name, dosTime, new byte[0], data, compression);
+    }
+
+    /**
+     * Copies an entry from the source zip like {@link #copyRaw(ZipReader, ZipReader.Entry)}, but compressed the way
+     * the strategy decides instead of the way it was compressed in the source.
+     */
+    public void recompress(ZipReader source, ZipReader.Entry entry, CompressionStrategy compression) throws IOException {
+        recompress(source, entry, entry.getName(), compression);
+    }
+
+    /**
+     * Recompresses an entry like {@link #recompress(ZipReader, ZipReader.Entry, CompressionStrategy)}, but stores it
+     * under a different name.
+     */
+    public void recompress(ZipReader source, ZipReader.Entry entry, String name, CompressionStrategy compression) throws IOException {
+        byte[] data;
+        try (InputStream in = source.getInputStream(entry)) {
+            data = in.readAllBytes();
+        }
+        write(name, entry.getDosTime(), stripZip64(entry.getExtra()), data, compression);
+    }
+
+    private void write(String name, int dosTime, byte[] extra, byte[] data, CompressionStrategy compression) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        int level = compression.getLevel(name);
+        if (level == CompressionStrategy.STORED) {
+            compression.recordStored(name, data.length);
+            writeRaw(name, ZipEntry.STORED, dosTime, crc.getValue(), data.length, data.length, extra, new ByteArrayInputStream(data));
+            return;
+        }
+        byte[] compressed = compression.deflate(name, data, level);
+        writeRaw(name, ZipEntry.DEFLATED, dosTime, crc.getValue(), compressed.length, data.length, extra, new ByteArrayInputStream(compressed));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            long directoryOffset = offset;
+            long directorySize = 0;
+            for (WrittenEntry entry : written) directorySize += 46 + entry.name.length + entry.extra.length;
+            // Checked before writing anything, so a container that's too large fails without a partial directory
+            if (written.size() >= 0xFFFF || directoryOffset + directorySize >= 0xFFFFFFFFL) {
+                throw new ZipReader.ZipFormatException("Zip would require ZIP64, which is not supported");
+            }
+            for (WrittenEntry entry : written) {
+                out.writeInt(Integer.reverseBytes(CENTRAL_DIRECTORY_HEADER));
+                writeShort(20);
+                writeShort(versionNeeded(entry.method));
+                writeShort(UTF8_FLAG);
+                writeShort(entry.method);
+                out.writeInt(Integer.reverseBytes(entry.dosTime));
+                out.writeInt(Integer.reverseBytes((int) entry.crc));
+                out.writeInt(Integer.reverseBytes((int) entry.compressedSize));
+                out.writeInt(Integer.reverseBytes((int) entry.size));
+                writeShort(entry.name.length);
+                writeShort(entry.extra.length);
+                writeShort(0);
+                writeShort(0);
+                writeShort(0);
+                out.writeInt(0);
+                out.writeInt(Integer.reverseBytes((int) entry.localHeaderOffset));
+                out.write(entry.name);
+                out.write(entry.extra);
+            }
+            offset += directorySize;
+            out.writeInt(Integer.reverseBytes(END_OF_CENTRAL_DIRECTORY));
+            writeShort(0);
+            writeShort(0);
+            writeShort(written.size());
+            writeShort(written.size());
+            out.writeInt(Integer.reverseBytes((int) directorySize));
+            out.writeInt(Integer.reverseBytes((int) directoryOffset));
+            writeShort(0);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.writeShort(Short.reverseBytes((short) value));
+    }
+
+    /**
+     * Converts a local date and time to the MS-DOS format used by zip files.
+     */
+    public static int toDosTime(LocalDateTime time) {
+        return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+                | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+
+    private static int versionNeeded(int method) {
+        return method == ZipEntry.DEFLATED ? 20 : 10;
+    }
+
+    /**
+     * Removes ZIP64 extended information fields, these would be invalid once the sizes are written without them.
+     */
+    private static byte[] stripZip64(byte[] extra) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(extra.length);
+        int i = 0;
+        while (i + 4 <= extra.length) {
+            int id = (extra[i] & 0xFF) | (extra[i + 1] & 0xFF) << 8;
+            int length = (extra[i + 2] & 0xFF) | (extra[i + 3] & 0xFF) << 8;
+            int end = Math.min(extra.length, i + 4 + length);
+            if (id != 0x0001) result.write(extra, i, end - i);
+            i = end;
+        }
+        return result.toByteArray();
+    }
+
+    private static class WrittenEntry {
+        private final byte[] name;
+        private final int method;
+        private final int dosTime;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final byte[] extra;
+        private final long localHeaderOffset;
+
+        private WrittenEntry(byte[] name, int method, int dosTime, long crc, long compressedSize, long size, byte[] extra, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.extra = extra;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+}
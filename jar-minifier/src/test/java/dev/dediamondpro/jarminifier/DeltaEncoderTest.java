@@ -0,0 +1,76 @@
+package dev.dediamondpro.jarminifier;
+
+import dev.dediamondpro.omniloader0.DeltaDecoder;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that patches written by the minifier are rebuilt byte for byte by the loader, which has its own copy of the
+ * format.
+ */
+class DeltaEncoderTest {
+
+    @Test
+    void emptyBaseAndTarget() throws IOException {
+        assertRoundTrip(new byte[0], new byte[0]);
+    }
+
+    @Test
+    void emptyBase() throws IOException {
+        assertRoundTrip(new byte[0], random(1, 1000));
+    }
+
+    @Test
+    void emptyTarget() throws IOException {
+        assertRoundTrip(random(2, 1000), new byte[0]);
+    }
+
+    @Test
+    void identical() throws IOException {
+        byte[] data = random(3, 10_000);
+        byte[] patch = assertRoundTrip(data, data.clone());
+        assertTrue(patch.length < 100, "Identical data should be copied from the base, patch was " + patch.length + " bytes");
+    }
+
+    @Test
+    void fullyDifferent() throws IOException {
+        assertRoundTrip(random(4, 10_000), random(5, 10_000));
+    }
+
+    @Test
+    void shorterThanBlock() throws IOException {
+        assertRoundTrip(new byte[]{1, 2, 3}, new byte[]{1, 2, 3, 4});
+    }
+
+    @Test
+    void large() throws IOException {
+        byte[] base = random(6, 4 * 1024 * 1024);
+        byte[] target = Arrays.copyOf(base, base.length + 1000);
+        // Edits, an insertion, a moved block and a tail that isn't in the base
+        Random random = new Random(7);
+        for (int i = 0; i < 100; i++) target[random.nextInt(base.length)] ^= 0x55;
+        System.arraycopy(base, 1_000_000, target, 1_000_100, 500_000);
+        System.arraycopy(base, 3_000_000, target, 100, 64 * 1024);
+        for (int i = base.length; i < target.length; i++) target[i] = (byte) i;
+        byte[] patch = assertRoundTrip(base, target);
+        assertTrue(patch.length < target.length / 10, "Large mostly equal data should mostly be copied, patch was " + patch.length + " bytes");
+    }
+
+    private static byte[] assertRoundTrip(byte[] base, byte[] target) throws IOException {
+        byte[] patch = DeltaEncoder.encode(base, target);
+        assertArrayEquals(target, DeltaDecoder.apply(base, new ByteArrayInputStream(patch)));
+        return patch;
+    }
+
+    private static byte[] random(long seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
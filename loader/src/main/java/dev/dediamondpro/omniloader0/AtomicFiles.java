@@ -0,0 +1,41 @@
+package dev.dediamondpro.omniloader0;
+
+import java.io.*;
+import java.nio.file.*;
+
+public class AtomicFiles {
+    /**
+     * Copies the stream to a temporary file next to the target and then moves it in place,
+     * so a crash while copying never leaves a truncated file behind at the target.
+     */
+    public static void copy(InputStream in, Path target) throws IOException {
+        write(target, out -> {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) out.write(buffer, 0, count);
+        });
+    }
+
+    /**
+     * Writes to a temporary file next to the target and then moves it in place, see {@link #copy(InputStream, Path)}.
+     */
+    public static void write(Path target, Writer writer) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                writer.write(out);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public interface Writer {
+        void write(OutputStream out) throws IOException;
+    }
+}
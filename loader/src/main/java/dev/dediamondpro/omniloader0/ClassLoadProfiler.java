@@ -0,0 +1,179 @@
+package dev.dediamondpro.omniloader0;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Records the order classes of the primary jars are first loaded in, and the partition each came from, and writes
+ * it to class-profile.json when the game exits. The minifier can use the profile to put the classes that are loaded
+ * first at the start of their partition. Knot passes every class it defines through the mixin transformer, so the
+ * transformer is wrapped to see the classes being loaded.
+ */
+public class ClassLoadProfiler {
+    private static final Logger LOGGER = LogManager.getLogger("OmniLoader");
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private static final String FILE_NAME = "class-profile.json";
+    private static final String TRANSFORMER_CLASS = "org.spongepowered.asm.mixin.transformer.IMixinTransformer";
+
+    private final String minecraftVersion;
+    private final transient long startNanos = System.nanoTime();
+    private final transient ConcurrentHashMap<String, Source> sources = new ConcurrentHashMap<>();
+    private final ArrayList<LoadedClass> classes = new ArrayList<>();
+
+    private ClassLoadProfiler(String minecraftVersion) {
+        this.minecraftVersion = minecraftVersion;
+    }
+
+    /**
+     * Starts profiling the classes loaded by the given class loader, and writes the profile to the directory when the game exits.
+     *
+     * @return the profiler, or null if the class loader isn't one it knows how to profile
+     */
+    public static ClassLoadProfiler install(ClassLoader classLoader, String minecraftVersion, File dir) {
+        ClassLoadProfiler profiler = new ClassLoadProfiler(minecraftVersion);
+        try {
+            for (Field delegateField : getFields(classLoader.getClass())) {
+                if (delegateField.getType().isPrimitive()) continue;
+                delegateField.setAccessible(true);
+                Object delegate = delegateField.get(classLoader);
+                if (delegate == null) continue;
+                for (Field transformerField : getFields(delegate.getClass())) {
+                    if (!transformerField.getType().getName().equals(TRANSFORMER_CLASS)) continue;
+                    transformerField.setAccessible(true);
+                    transformerField.set(delegate, profiler.wrap(transformerField.getType(), transformerField.get(delegate)));
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> profiler.save(dir), "OmniLoader Profile Writer"));
+                    LOGGER.info("Profiling class loading, the profile is written to {} when the game exits", new File(dir, FILE_NAME));
+                    return profiler;
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.warn("Failed to set up class load profiling:", e);
+            return null;
+        }
+        LOGGER.warn("Class load profiling isn't supported by this version of Fabric Loader");
+        return null;
+    }
+
+    /**
+     * Makes the classes of a partition known to the profiler, which has to happen before they can be loaded.
+     *
+     * @param jar the partition's path in the container
+     * @param path the extracted jar, or the directory of an exploded jar in the mounted container
+     */
+    public void addJar(String modId, String jar, Path path) {
+        Source source = new Source(modId, jar);
+        try {
+            if (path.getFileSystem() != FileSystems.getDefault() || Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.walk(path)) {
+                    files.forEach(file -> {
+                        String name = path.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                        if (name.endsWith(".class")) sources.putIfAbsent(name, source);
+                    });
+                }
+                return;
+            }
+            try (ZipFile zip = new ZipFile(path.toFile())) {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    if (name.endsWith(".class")) sources.putIfAbsent(name, source);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to list the classes of " + path + " for profiling:", e);
+        }
+    }
+
+    private Object wrap(Class<?> type, Object transformer) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getName().equals("transformClassBytes") && args != null && args.length == 3 && args[0] instanceof String) {
+                record((String) args[0]);
+            }
+            try {
+                return method.invoke(transformer, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    private void record(String className) {
+        String name = className.replace('.', '/') + ".class";
+        Source source = sources.remove(name);
+        if (source == null) return;
+        long millis = (System.nanoTime() - startNanos) / 1_000_000;
+        synchronized (classes) {
+            classes.add(new LoadedClass(name, source.modId, source.jar, millis));
+        }
+    }
+
+    private void save(File dir) {
+        byte[] json;
+        synchronized (classes) {
+            json = gson.toJson(this).getBytes(StandardCharsets.UTF_8);
+        }
+        try {
+            AtomicFiles.copy(new ByteArrayInputStream(json), new File(dir, FILE_NAME).toPath());
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write class load profile:", e);
+        }
+    }
+
+    /**
+     * @return the instance fields declared by the class and its superclasses, up to the first class of the JDK,
+     * whose fields can't be made accessible
+     */
+    private static ArrayList<Field> getFields(Class<?> clazz) {
+        ArrayList<Field> fields = new ArrayList<>();
+        for (Class<?> current = clazz; current != null && !current.getName().startsWith("java."); current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    private static class Source {
+        private final String modId;
+        private final String jar;
+
+        private Source(String modId, String jar) {
+            this.modId = modId;
+            this.jar = jar;
+        }
+    }
+
+    private static class LoadedClass {
+        private final String name;
+        private final String mod;
+        private final String jar;
+        private final long millis;
+
+        private LoadedClass(String name, String mod, String jar, long millis) {
+            this.name = name;
+            this.mod = mod;
+            this.jar = jar;
+            this.millis = millis;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package dev.dediamondpro.omniloader0;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import net.fabricmc.loader.api.ModContainer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * An omniloader mod's jar, opened once per launch to read its schema and extract the inner jars that should be loaded.
+ * Inner jars that are stored exploded, as a directory in the container, are loaded from the container itself instead.
+ */
+public class Container implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger("OmniLoader");
+    private static final Gson gson = new GsonBuilder().create();
+
+    private final Path path;
+    private final JarFile jar;
+    private final OmniLoaderSchema schema;
+    private final StartupReport.ModReport report;
+    private FileSystem fileSystem;
+
+    private Container(Path path, JarFile jar, OmniLoaderSchema schema, StartupReport.ModReport report) {
+        this.path = path;
+        this.jar = jar;
+        this.schema = schema;
+        this.report = report;
+    }
+
+    /**
+     * @return the container of the mod, or null if none of its paths contain an omniloader schema
+     */
+    public static Container open(ModContainer mod, StartupReport.ModReport report) {
+        for (Path path : mod.getOrigin().getPaths()) {
+            JarFile jar = null;
+            try {
+                jar = new JarFile(path.toFile());
+                report.jarOpened();
+                JarEntry omniLoaderFile = jar.getJarEntry("omniloader0.json");
+                if (omniLoaderFile == null) {
+                    jar.close();
+                    continue;
+                }
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(jar.getInputStream(omniLoaderFile), StandardCharsets.UTF_8))) {
+                    OmniLoaderSchema schema = gson.fromJson(reader, OmniLoaderSchema.class);
+                    if (schema.getSchemaVersion() > 1) {
+                        throw new IllegalStateException("Schema version requested (" + schema.getSchemaVersion() + ") is greater then the highest schema version supported by this version of OmniLoader (1)");
+                    }
+                    return new Container(path, jar, schema, report);
+                }
+            } catch (IOException e) {
+                LOGGER.error("Failed to check jar file:", e);
+                closeQuietly(jar);
+            } catch (RuntimeException e) {
+                closeQuietly(jar);
+                throw e;
+            }
+        }
+        return null;
+    }
+
+    public OmniLoaderSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Extracts the given inner jars to the directory, unless the cache says they are already up to date there.
+     * The fabric.mod.json of every jar is read while it's extracted, so the extracted jars don't have to be opened again.
+     * Exploded inner jars aren't extracted at all, they are mounted from the container.
+     */
+    public Map<OmniLoaderSchema.Jar, InnerJar> extract(List<OmniLoaderSchema.Jar> jars, File dir, ExtractionCache cache) {
+        LinkedHashMap<OmniLoaderSchema.Jar, InnerJar> extractedJars = new LinkedHashMap<>();
+        for (OmniLoaderSchema.Jar jarToLoad : jars) {
+            if (jarToLoad.getPath().endsWith("/")) {
+                if (jarToLoad.getDeltas() != null) LOGGER.warn("Ignoring deltas of exploded jar " + jarToLoad.getPath());
+                InnerJar exploded = mount(jarToLoad);
+                if (exploded != null) extractedJars.put(jarToLoad, exploded);
+                continue;
+            }
+            JarEntry entry = jar.getJarEntry(jarToLoad.getPath());
+            if (entry == null) {
+                LOGGER.warn("Jar file " + jarToLoad.getPath() + " not found.");
+                continue;
+            }
+            File file = new File(dir, entry.getName());
+            try {
+                byte[] fabricModJson = getEmbeddedFabricModJson(jarToLoad);
+                if (cache.isUpToDate(entry, file)) {
+                    report.cacheHit();
+                    if (fabricModJson == null) fabricModJson = cache.getFabricModJson(entry);
+                } else {
+                    new File(file.getParent()).mkdirs();
+                    StreamedJar streamed = new StreamedJar();
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        AtomicFiles.write(file.toPath(), out -> copyAndReadFabricModJson(in, out, streamed));
+                    }
+                    report.jarExtracted(entry.getSize());
+                    if (fabricModJson == null && !streamed.complete) {
+                        report.jarOpened();
+                        fabricModJson = readFabricModJson(file);
+                    } else if (fabricModJson == null) {
+                        fabricModJson = streamed.fabricModJson;
+                    }
+                    cache.update(entry, file, fabricModJson);
+                }
+                Path deltaJar = jarToLoad.getDeltas() == null ? null : rebuildDeltas(jarToLoad, file, cache);
+                extractedJars.put(jarToLoad, new InnerJar(file.toPath(), deltaJar, fabricModJson));
+            } catch (IOException e) {
+                LOGGER.error("Failed to load jar file:", e);
+            }
+        }
+        cache.save();
+        return extractedJars;
+    }
+
+    /**
+     * @return the directory of an exploded inner jar inside the mounted container, or null if it can't be loaded
+     */
+    private InnerJar mount(OmniLoaderSchema.Jar exploded) {
+        try {
+            if (fileSystem == null) {
+                fileSystem = FileSystems.newFileSystem(path, (ClassLoader) null);
+                report.jarOpened();
+            }
+            Path directory = fileSystem.getPath(exploded.getPath());
+            if (!Files.isDirectory(directory)) {
+                LOGGER.warn("Jar directory " + exploded.getPath() + " not found.");
+                return null;
+            }
+            byte[] embedded = getEmbeddedFabricModJson(exploded);
+            if (embedded != null) return new InnerJar(directory, null, embedded);
+            JarEntry fabricJson = jar.getJarEntry(exploded.getPath() + "fabric.mod.json");
+            if (fabricJson == null) return new InnerJar(directory, null, null);
+            try (InputStream in = jar.getInputStream(fabricJson)) {
+                return new InnerJar(directory, null, readAll(in));
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to mount container " + path + ":", e);
+            return null;
+        }
+    }
+
+    /**
+     * Rebuilds the delta encoded entries of an inner jar into a jar next to it, unless the cache says it's already up to date.
+     * The cache key covers every base and patch the entries are built from, by their CRC32 in the container.
+     */
+    private Path rebuildDeltas(OmniLoaderSchema.Jar jarToLoad, File extracted, ExtractionCache cache) throws IOException {
+        String name = extracted.getName();
+        File file = new File(extracted.getParentFile(), name.substring(0, name.length() - ".jar".length()) + "-delta.jar");
+        String key = jarToLoad.getPath() + "#deltas";
+        CRC32 crc = new CRC32();
+        hashDeltas(jarToLoad, crc);
+        if (cache.isUpToDate(key, crc.getValue(), jarToLoad.getDeltas().size(), file)) {
+            report.cacheHit();
+            return file.toPath();
+        }
+        long[] bytes = {0};
+        AtomicFiles.write(file.toPath(), out -> {
+            ZipOutputStream zip = new ZipOutputStream(out);
+            for (OmniLoaderSchema.Delta delta : jarToLoad.getDeltas()) {
+                byte[] content;
+                try (InputStream in = jar.getInputStream(jar.getJarEntry(delta.getBase()))) {
+                    content = readAll(in);
+                }
+                if (delta.getPatch() != null) {
+                    try (InputStream in = jar.getInputStream(jar.getJarEntry(delta.getPatch()))) {
+                        content = DeltaDecoder.apply(content, in);
+                    }
+                }
+                zip.putNextEntry(new ZipEntry(delta.getName()));
+                zip.write(content);
+                zip.closeEntry();
+                bytes[0] += content.length;
+            }
+            zip.finish();
+        });
+        report.jarExtracted(bytes[0]);
+        cache.update(key, crc.getValue(), jarToLoad.getDeltas().size(), file, null);
+        return file.toPath();
+    }
+
+    private void hashDeltas(OmniLoaderSchema.Jar jarToLoad, CRC32 crc) throws IOException {
+        for (OmniLoaderSchema.Delta delta : jarToLoad.getDeltas()) {
+            crc.update((delta.getName() + "\0" + delta.getBase() + "\0" + delta.getPatch() + "\n").getBytes(StandardCharsets.UTF_8));
+            for (String source : new String[]{delta.getBase(), delta.getPatch()}) {
+                if (source == null) continue;
+                JarEntry entry = jar.getJarEntry(source);
+                if (entry == null) throw new FileNotFoundException("Delta source " + source + " not found.");
+                crc.update(Long.toString(entry.getCrc()).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Merges the extracted primary jars, and the jars rebuilt from their deltas, into one jar, so the class loader searches
+     * a single class path entry for the mod instead of one per partition. The merged jar is kept for every Minecraft
+     * version, and is only rebuilt when one of the container entries it's made from changes.
+     * Entries are stored uncompressed, so classes loaded from it don't have to be inflated.
+     *
+     * @return the merged jar, or null if there is nothing to merge or the jars can't be merged
+     */
+    public Path merge(Map<OmniLoaderSchema.Jar, InnerJar> extractedJars, File dir, String minecraftVersion, ExtractionCache cache) {
+        ArrayList<Path> sources = new ArrayList<>();
+        File file = new File(dir, "merged-" + minecraftVersion.replaceAll("[^A-Za-z0-9._-]", "_") + ".jar");
+        String key = "merged#" + minecraftVersion;
+        try {
+            CRC32 crc = new CRC32();
+            crc.update(minecraftVersion.getBytes(StandardCharsets.UTF_8));
+            for (Map.Entry<OmniLoaderSchema.Jar, InnerJar> extracted : extractedJars.entrySet()) {
+                OmniLoaderSchema.Jar jarToLoad = extracted.getKey();
+                if (!jarToLoad.isPrimary()) continue;
+                // Exploded jars are already loaded from the container without extracting them
+                if (jarToLoad.getPath().endsWith("/")) return null;
+                JarEntry entry = jar.getJarEntry(jarToLoad.getPath());
+                crc.update((jarToLoad.getPath() + "\0" + entry.getCrc() + "\0" + entry.getSize() + "\n").getBytes(StandardCharsets.UTF_8));
+                sources.add(extracted.getValue().getPath());
+                if (extracted.getValue().getDeltaPath() == null) continue;
+                hashDeltas(jarToLoad, crc);
+                sources.add(extracted.getValue().getDeltaPath());
+            }
+            if (sources.size() < 2) return null;
+            if (cache.isUpToDate(key, crc.getValue(), sources.size(), file)) {
+                report.cacheHit();
+                return file.toPath();
+            }
+            long[] bytes = {0};
+            AtomicFiles.write(file.toPath(), out -> {
+                ZipOutputStream zip = new ZipOutputStream(out);
+                HashSet<String> names = new HashSet<>();
+                for (Path source : sources) {
+                    try (JarFile sourceJar = new JarFile(source.toFile())) {
+                        Enumeration<JarEntry> entries = sourceJar.entries();
+                        while (entries.hasMoreElements()) {
+                            JarEntry entry = entries.nextElement();
+                            if (!names.add(entry.getName())) continue;
+                            ZipEntry merged = new ZipEntry(entry.getName());
+                            merged.setMethod(ZipEntry.STORED);
+                            merged.setSize(entry.getSize());
+                            merged.setCompressedSize(entry.getSize());
+                            merged.setCrc(entry.getCrc());
+                            merged.setTime(entry.getTime());
+                            zip.putNextEntry(merged);
+                            try (InputStream in = sourceJar.getInputStream(entry)) {
+                                byte[] buffer = new byte[8192];
+                                int count;
+                                while ((count = in.read(buffer)) != -1) zip.write(buffer, 0, count);
+                            }
+                            zip.closeEntry();
+                            bytes[0] += entry.getSize();
+                        }
+                    }
+                }
+                zip.finish();
+            });
+            report.jarExtracted(bytes[0]);
+            cache.update(key, crc.getValue(), sources.size(), file, null);
+            return file.toPath();
+        } catch (IOException e) {
+            LOGGER.error("Failed to merge jars, loading them separately:", e);
+            return null;
+        }
+    }
+
+    /**
+     * Copies an inner jar while reading it as a zip, to find its fabric.mod.json without opening the copy afterwards.
+     */
+    private static void copyAndReadFabricModJson(InputStream in, OutputStream out, StreamedJar result) throws IOException {
+        CopyingInputStream copying = new CopyingInputStream(in, out);
+        try (ZipInputStream zip = new ZipInputStream(copying)) {
+            for (ZipEntry zipEntry; (zipEntry = zip.getNextEntry()) != null; ) {
+                if (zipEntry.getName().equals("fabric.mod.json")) result.fabricModJson = readAll(zip);
+            }
+            result.complete = true;
+        } catch (IOException e) {
+            // Not every valid jar can be streamed, in that case the copied jar is read normally afterwards
+            LOGGER.debug("Failed to stream jar while extracting it:", e);
+        }
+        // Copy whatever the zip stream didn't need, such as the central directory
+        byte[] buffer = new byte[8192];
+        while (true) {
+            if (copying.read(buffer) == -1) break;
+        }
+    }
+
+    private static byte[] getEmbeddedFabricModJson(OmniLoaderSchema.Jar jarToLoad) {
+        if (jarToLoad.getFabricModJson() == null) return null;
+        return gson.toJson(jarToLoad.getFabricModJson()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads an entry of an extracted or mounted inner jar, falling back to the jar rebuilt from its deltas.
+     *
+     * @return the content of the entry, or null if neither jar has it
+     */
+    public static byte[] readEntry(InnerJar innerJar, String name) throws IOException {
+        for (Path path : new Path[]{innerJar.getPath(), innerJar.getDeltaPath()}) {
+            if (path == null) continue;
+            if (Files.isDirectory(path)) {
+                Path file = path.resolve(name);
+                if (Files.isRegularFile(file)) return Files.readAllBytes(file);
+                continue;
+            }
+            try (JarFile jarFile = new JarFile(path.toFile())) {
+                JarEntry entry = jarFile.getJarEntry(name);
+                if (entry == null) continue;
+                try (InputStream in = jarFile.getInputStream(entry)) {
+                    return readAll(in);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static byte[] readFabricModJson(File file) throws IOException {
+        try (JarFile jarFile = new JarFile(file)) {
+            JarEntry fabricJson = jarFile.getJarEntry("fabric.mod.json");
+            if (fabricJson == null) return null;
+            try (InputStream in = jarFile.getInputStream(fabricJson)) {
+                return readAll(in);
+            }
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) out.write(buffer, 0, count);
+        return out.toByteArray();
+    }
+
+    private static void closeQuietly(JarFile jar) {
+        if (jar == null) return;
+        try {
+            jar.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Closes the container's jar. A mounted container stays open, since its exploded jars are on the class path for the rest of the game.
+     */
+    @Override
+    public void close() throws IOException {
+        jar.close();
+    }
+
+    public static class InnerJar {
+        private final Path path;
+        private final Path deltaPath;
+        private final byte[] fabricModJson;
+
+        public InnerJar(Path path, Path deltaPath, byte[] fabricModJson) {
+            this.path = path;
+            this.deltaPath = deltaPath;
+            this.fabricModJson = fabricModJson;
+        }
+
+        /**
+         * @return the extracted jar, or the directory inside the mounted container for an exploded jar
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * @return the jar with the entries rebuilt from deltas, which has to be loaded along with the jar itself, or null if there is none
+         */
+        public Path getDeltaPath() {
+            return deltaPath;
+        }
+
+        /**
+         * @return the content of the jar's fabric.mod.json, or null if it doesn't have one
+         */
+        public byte[] getFabricModJson() {
+            return fabricModJson;
+        }
+    }
+
+    private static class StreamedJar {
+        private boolean complete = false;
+        private byte[] fabricModJson = null;
+    }
+
+    /**
+     * Input stream that writes everything that is read from it to another stream.
+     */
+    private static class CopyingInputStream extends FilterInputStream {
+        private final OutputStream copy;
+
+        private CopyingInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) copy.write(b);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = in.read(b, off, len);
+            if (count > 0) copy.write(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int count = read(buffer, 0, buffer.length);
+            return Math.max(count, 0);
+        }
+
+        @Override
+        public void close() {
+            // The underlying stream is closed by the caller once everything is copied
+        }
+    }
+}
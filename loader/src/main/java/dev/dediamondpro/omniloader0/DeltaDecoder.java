@@ -0,0 +1,61 @@
+package dev.dediamondpro.omniloader0;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Rebuilds an entry from its base and a patch written by the minifier's DeltaEncoder. A patch starts with
+ * {@link #MAGIC} and the length of the target as a varint, followed by operations until the target is complete:
+ * {@link #ADD} with a varint length and that many literal bytes, or {@link #COPY} with a varint offset and length into the base.
+ */
+public class DeltaDecoder {
+    private static final byte[] MAGIC = {'O', 'L', 'D', 1};
+    private static final int ADD = 0;
+    private static final int COPY = 1;
+
+    public static byte[] apply(byte[] base, InputStream patch) throws IOException {
+        DataInputStream in = new DataInputStream(patch);
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a delta patch");
+        byte[] target = new byte[readVarInt(in)];
+        int position = 0;
+        while (position < target.length) {
+            int operation = in.readUnsignedByte();
+            if (operation == ADD) {
+                int length = readVarInt(in);
+                checkLength(position, length, target.length);
+                in.readFully(target, position, length);
+                position += length;
+            } else if (operation == COPY) {
+                int offset = readVarInt(in);
+                int length = readVarInt(in);
+                checkLength(position, length, target.length);
+                checkLength(offset, length, base.length);
+                System.arraycopy(base, offset, target, position, length);
+                position += length;
+            } else {
+                throw new IOException("Unknown delta operation " + operation);
+            }
+        }
+        return target;
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint in delta patch");
+    }
+
+    private static void checkLength(int offset, int length, int limit) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > limit || offset + length < 0) {
+            throw new IOException("Delta operation out of bounds");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package dev.dediamondpro.omniloader0;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.jar.JarEntry;
+
+/**
+ * Remembers which inner jars were extracted from which container entry (by CRC32 and size from the central directory),
+ * so jars that are still up to date don't have to be extracted again on every launch.
+ * The fabric.mod.json of every extracted jar is kept as well, so up-to-date jars don't have to be opened at all.
+ */
+public class ExtractionCache {
+    private static final Logger LOGGER = LogManager.getLogger("OmniLoader");
+    private static final Gson gson = new GsonBuilder().create();
+    private static final String FILE_NAME = "extraction-cache.json";
+    private static final int CACHE_VERSION = 2;
+
+    private transient File file;
+    private transient boolean changed = false;
+    private int cacheVersion;
+    private final HashMap<String, Record> entries = new HashMap<>();
+
+    public static ExtractionCache load(File dir) {
+        File file = new File(dir, FILE_NAME);
+        ExtractionCache cache = null;
+        if (file.isFile()) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                cache = gson.fromJson(reader, ExtractionCache.class);
+            } catch (IOException | JsonParseException e) {
+                LOGGER.warn("Failed to read extraction cache, extracting all jars again:", e);
+            }
+        }
+        if (cache == null || cache.cacheVersion != CACHE_VERSION || cache.entries == null) {
+            cache = new ExtractionCache();
+            cache.cacheVersion = CACHE_VERSION;
+        }
+        cache.file = file;
+        return cache;
+    }
+
+    /**
+     * @return whether the file was extracted from this exact entry and hasn't been modified since
+     */
+    public boolean isUpToDate(JarEntry entry, File extracted) {
+        return isUpToDate(entry.getName(), entry.getCrc(), entry.getSize(), extracted);
+    }
+
+    /**
+     * @return whether the file was built from a source with this key, CRC32 and size, and hasn't been modified since
+     */
+    public boolean isUpToDate(String key, long crc, long size, File extracted) {
+        Record record = entries.get(key);
+        return record != null && record.crc == crc && record.size == size
+                && extracted.isFile() && extracted.length() == record.length && extracted.lastModified() == record.lastModified;
+    }
+
+    /**
+     * @return the fabric.mod.json recorded for an up-to-date entry, or null if the jar doesn't have one
+     */
+    public byte[] getFabricModJson(JarEntry entry) {
+        Record record = entries.get(entry.getName());
+        return record == null || record.fabricModJson == null ? null : record.fabricModJson.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void update(JarEntry entry, File extracted, byte[] fabricModJson) {
+        update(entry.getName(), entry.getCrc(), entry.getSize(), extracted, fabricModJson);
+    }
+
+    public void update(String key, long crc, long size, File extracted, byte[] fabricModJson) {
+        String json = fabricModJson == null ? null : new String(fabricModJson, StandardCharsets.UTF_8);
+        entries.put(key, new Record(crc, size, extracted.length(), extracted.lastModified(), json));
+        changed = true;
+    }
+
+    public void save() {
+        if (!changed) return;
+        try {
+            AtomicFiles.copy(new ByteArrayInputStream(gson.toJson(this).getBytes(StandardCharsets.UTF_8)), file.toPath());
+            changed = false;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to save extraction cache:", e);
+        }
+    }
+
+    private static class Record {
+        private final long crc;
+        private final long size;
+        private final long length;
+        private final long lastModified;
+        private final String fabricModJson;
+
+        private Record(long crc, long size, long length, long lastModified, String fabricModJson) {
+            this.crc = crc;
+            this.size = size;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.fabricModJson = fabricModJson;
+        }
+    }
+}
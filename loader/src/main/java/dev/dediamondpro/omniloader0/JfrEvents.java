@@ -0,0 +1,107 @@
+package dev.dediamondpro.omniloader0;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JFR events for the startup report. The loader is built for Java 8, which doesn't have jdk.jfr everywhere,
+ * so the event types are defined at runtime through jdk.jfr.EventFactory using reflection.
+ */
+public class JfrEvents {
+    private static final Logger LOGGER = LogManager.getLogger("OmniLoader");
+
+    private final Object phaseFactory;
+    private final Object modFactory;
+    private final Method newEvent;
+    private final Method set;
+    private final Method commit;
+
+    private JfrEvents(Object phaseFactory, Object modFactory, Method newEvent, Method set, Method commit) {
+        this.phaseFactory = phaseFactory;
+        this.modFactory = modFactory;
+        this.newEvent = newEvent;
+        this.set = set;
+        this.commit = commit;
+    }
+
+    /**
+     * @return the events, or null if JFR isn't available or no recording was started, since defining them isn't free
+     */
+    public static JfrEvents get() {
+        try {
+            Class<?> flightRecorder = Class.forName("jdk.jfr.FlightRecorder");
+            if (!(boolean) flightRecorder.getMethod("isInitialized").invoke(null)) return null;
+            Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+            Method create = eventFactory.getMethod("create", List.class, List.class);
+            Object phaseFactory = create.invoke(null, eventAnnotations("Phase", "OmniLoader Phase"), Arrays.asList(
+                    field(String.class, "mod", "Mod", null),
+                    field(String.class, "phase", "Phase", null),
+                    field(long.class, "time", "Time", "NANOSECONDS")
+            ));
+            Object modFactory = create.invoke(null, eventAnnotations("Mod", "OmniLoader Mod"), Arrays.asList(
+                    field(String.class, "mod", "Mod", null),
+                    field(int.class, "jarsOpened", "Jars Opened", null),
+                    field(int.class, "jarsExtracted", "Jars Extracted", null),
+                    field(int.class, "cacheHits", "Cache Hits", null),
+                    field(long.class, "bytesExtracted", "Bytes Extracted", null)
+            ));
+            Class<?> event = Class.forName("jdk.jfr.Event");
+            return new JfrEvents(phaseFactory, modFactory, eventFactory.getMethod("newEvent"),
+                    event.getMethod("set", int.class, Object.class), event.getMethod("commit"));
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("Failed to define JFR events:", e);
+            return null;
+        }
+    }
+
+    public void phase(String mod, String phase, long nanos) {
+        commit(phaseFactory, mod, phase, nanos);
+    }
+
+    public void mod(String mod, int jarsOpened, int jarsExtracted, int cacheHits, long bytesExtracted) {
+        commit(modFactory, mod, jarsOpened, jarsExtracted, cacheHits, bytesExtracted);
+    }
+
+    private void commit(Object factory, Object... values) {
+        try {
+            Object event = newEvent.invoke(factory);
+            for (int i = 0; i < values.length; i++) {
+                set.invoke(event, i, values[i]);
+            }
+            commit.invoke(event);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.debug("Failed to commit JFR event:", e);
+        }
+    }
+
+    private static List<Object> eventAnnotations(String name, String label) throws ReflectiveOperationException {
+        return Arrays.asList(
+                annotation("jdk.jfr.Name", "dev.dediamondpro.omniloader0." + name),
+                annotation("jdk.jfr.Label", label),
+                annotation("jdk.jfr.Category", new String[]{"OmniLoader"})
+        );
+    }
+
+    private static Object field(Class<?> type, String name, String label, String timespan) throws ReflectiveOperationException {
+        List<Object> annotations = new ArrayList<>(Collections.singletonList(annotation("jdk.jfr.Label", label)));
+        if (timespan != null) annotations.add(annotation("jdk.jfr.Timespan", timespan));
+        Constructor<?> constructor = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+        return constructor.newInstance(type, name, annotations);
+    }
+
+    private static Object annotation(String type, Object value) throws ReflectiveOperationException {
+        Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+        Class<? extends Annotation> annotationType = Class.forName(type).asSubclass(Annotation.class);
+        return annotationElement.getConstructor(Class.class, Object.class).newInstance(annotationType, value);
+    }
+}
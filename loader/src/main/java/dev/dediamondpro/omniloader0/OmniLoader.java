@@ -1,7 +1,5 @@
 package dev.dediamondpro.omniloader0;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import net.fabricmc.accesswidener.AccessWidenerReader;
 import net.fabricmc.api.EnvType;
 import net.fabricmc.loader.api.FabricLoader;
@@ -24,45 +22,80 @@ import org.spongepowered.asm.mixin.Mixins;
 
 import java.io.*;
 import java.lang.reflect.*;
+import java.net.URL;
 import java.nio.file.*;
 import java.util.*;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 public class OmniLoader implements PreLaunchEntrypoint {
     private static final Logger LOGGER = LogManager.getLogger("OmniLoader");
-    private static final Gson gson = new GsonBuilder().create();
     private final FabricLoaderImpl fabricLoader = (FabricLoaderImpl) FabricLoader.getInstance();
     private final File loaderDir = new File(fabricLoader.getConfigDir().toFile(), "omniloader0");
 
     @Override
     public void onPreLaunch() {
         long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
         if (!setup()) return;
+        OmniLoaderConfig config = OmniLoaderConfig.load(loaderDir);
+        // Shared by every jar, so the overrides are only read from the config directory once per launch
+        versionOverrides = new VersionOverrides();
+        dependencyOverrides = new DependencyOverrides(fabricLoader.getConfigDir());
         Version mcVersion = fabricLoader.getModContainer("minecraft").get().getMetadata().getVersion();
-        ArrayList<ModContainer> loadedMods = new ArrayList<>();
-        for (ModContainer mod : new ArrayList<>(fabricLoader.getAllMods())) {
+        if (config.isProfileClassLoading()) {
+            profiler = ClassLoadProfiler.install(FabricLauncherBase.getLauncher().getTargetClassLoader(), mcVersion.getFriendlyString(), loaderDir);
+        }
+        StartupReport report = new StartupReport(mcVersion.getFriendlyString());
+        ArrayList<ModContainer> omniLoaderMods = new ArrayList<>();
+        ArrayList<StartupReport.ModReport> modReports = new ArrayList<>();
+        for (ModContainer mod : fabricLoader.getAllMods()) {
             if (!mod.getMetadata().containsCustomValue("omniloader0")) continue;
-            List<OmniLoaderSchema.Jar> jars = collectJars(mod);
-            if (jars == null || jars.isEmpty()) continue;
-            jars = filterJars(jars, mcVersion, "fabric");
-            Map<OmniLoaderSchema.Jar, File> extractedJars = extractJars(mod, jars);
-            LOGGER.info("Loading jars for " + mod.getMetadata().getId() + ": " + extractedJars.values().stream().map(File::getName).collect(Collectors.toList()));
-            ArrayList<Path> paths = new ArrayList<>();
-            for (OmniLoaderSchema.Jar jar : extractedJars.keySet()) {
-                if (jar.isPrimary()) paths.add(extractedJars.get(jar).toPath());
-            }
-            for (OmniLoaderSchema.Jar jar : extractedJars.keySet()) {
-                loadJar(extractedJars.get(jar));
+            omniLoaderMods.add(mod);
+            modReports.add(report.addMod(mod.getMetadata().getId()));
+        }
+        // Preparing a mod only does I/O and parsing, so mods are prepared in parallel,
+        // but everything that changes Fabric's state is done on this thread in the original mod order
+        ArrayList<Future<PreparedMod>> preparedMods = new ArrayList<>();
+        ExecutorService executor = omniLoaderMods.size() > 1 ? Executors.newFixedThreadPool(
+                Math.min(omniLoaderMods.size(), Runtime.getRuntime().availableProcessors()), runnable -> {
+                    Thread thread = new Thread(runnable, "OmniLoader Worker");
+                    thread.setDaemon(true);
+                    return thread;
+                }) : null;
+        for (int i = 0; i < omniLoaderMods.size(); i++) {
+            ModContainer mod = omniLoaderMods.get(i);
+            StartupReport.ModReport modReport = modReports.get(i);
+            Callable<PreparedMod> task = () -> prepareMod(mod, mcVersion, config.isMergeClasspath(), modReport);
+            if (executor != null) {
+                preparedMods.add(executor.submit(task));
+                continue;
             }
-            for (OmniLoaderSchema.Jar jar : extractedJars.keySet()) {
-                File file = extractedJars.get(jar);
-                ModContainer modContainer = addAsMod(file, jar.isPrimary() ? paths : Collections.singletonList(file.toPath()));
-                if (modContainer != null) loadedMods.add(modContainer);
+            FutureTask<PreparedMod> future = new FutureTask<>(task);
+            future.run();
+            preparedMods.add(future);
+        }
+        if (executor != null) executor.shutdown();
+        ArrayList<ModContainer> loadedMods = new ArrayList<>();
+        for (int i = 0; i < omniLoaderMods.size(); i++) {
+            PreparedMod prepared;
+            try {
+                prepared = preparedMods.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while preparing " + omniLoaderMods.get(i).getMetadata().getId(), e);
+            } catch (ExecutionException e) {
+                // I/O failures are logged and skipped by prepareMod itself, anything else aborts the launch like it would without the workers
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IllegalStateException("Failed to prepare " + omniLoaderMods.get(i).getMetadata().getId(), cause);
             }
+            if (prepared != null) registerMod(prepared, loadedMods, modReports.get(i));
         }
         LOGGER.info("Finished loading omniloader mods, took {}ms", System.currentTimeMillis() - startTime);
+        report.finish(startNanos);
+        if (config.isWriteStartupReport()) report.save(loaderDir);
         if (fabricLoader.hasEntrypoints("preLaunch")) {
             for (EntrypointContainer<PreLaunchEntrypoint> container : fabricLoader.getEntrypointContainers("preLaunch", PreLaunchEntrypoint.class)) {
                 if (!loadedMods.contains(container.getProvider())) continue;
@@ -71,26 +104,106 @@ public class OmniLoader implements PreLaunchEntrypoint {
         }
     }
 
-    public List<OmniLoaderSchema.Jar> collectJars(ModContainer mod) {
-        for (Path path : mod.getOrigin().getPaths()) {
-            try (JarFile jar = new JarFile(path.toString())) {
-                JarEntry omniLoaderFile = jar.getJarEntry("omniloader0.json");
-                if (omniLoaderFile == null) continue;
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(jar.getInputStream(omniLoaderFile)))) {
-                    OmniLoaderSchema schema = gson.fromJson(reader, OmniLoaderSchema.class);
-                    if (schema.getSchemaVersion() >= 1) {
-                        throw new IllegalStateException("Schema version requested (" + schema.getSchemaVersion() + ") is greater then the highest schema version supported by this version of OmniLoader (0)");
-                    }
-                    return schema.getJars();
+    /**
+     * Reads the mod's schema, extracts the jars it needs and parses their metadata, without touching Fabric's state.
+     * Access wideners are read here as well, so registering the mod doesn't have to read from its jars.
+     *
+     * @param mergeClasspath whether to merge the primary jars into one jar
+     * @return the prepared mod, or null if it has nothing to load
+     */
+    private PreparedMod prepareMod(ModContainer mod, Version mcVersion, boolean mergeClasspath, StartupReport.ModReport report) {
+        Map<OmniLoaderSchema.Jar, Container.InnerJar> extractedJars;
+        Path mergedJar = null;
+        long start = System.nanoTime();
+        try (Container container = Container.open(mod, report)) {
+            report.time("schema", start);
+            if (container == null) return null;
+            List<OmniLoaderSchema.Jar> jars = container.getSchema().getJars();
+            if (jars == null || jars.isEmpty()) return null;
+            start = System.nanoTime();
+            VersionIndex versionIndex = container.getSchema().getVersionIndex();
+            List<OmniLoaderSchema.Jar> indexedJars = versionIndex != null ? versionIndex.resolve(jars, mcVersion, "fabric") : null;
+            jars = indexedJars != null ? indexedJars : filterJars(jars, mcVersion, "fabric");
+            report.time("filter", start);
+            start = System.nanoTime();
+            File dir = new File(loaderDir, mod.getMetadata().getId());
+            dir.mkdirs();
+            ExtractionCache cache = ExtractionCache.load(dir);
+            extractedJars = container.extract(jars, dir, cache);
+            report.time("extract", start);
+            if (mergeClasspath) {
+                start = System.nanoTime();
+                mergedJar = container.merge(extractedJars, dir, mcVersion.getFriendlyString(), cache);
+                cache.save();
+                report.time("merge", start);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to prepare omniloader mod " + mod.getMetadata().getId() + ":", e);
+            return null;
+        }
+        start = System.nanoTime();
+        LinkedHashMap<OmniLoaderSchema.Jar, LoaderModMetadata> metadata = new LinkedHashMap<>();
+        HashMap<OmniLoaderSchema.Jar, byte[]> accessWideners = new HashMap<>();
+        ArrayList<Container.InnerJar> primaryJars = new ArrayList<>();
+        for (OmniLoaderSchema.Jar jar : extractedJars.keySet()) {
+            if (jar.isPrimary()) primaryJars.add(extractedJars.get(jar));
+        }
+        for (OmniLoaderSchema.Jar jar : extractedJars.keySet()) {
+            Container.InnerJar innerJar = extractedJars.get(jar);
+            LoaderModMetadata jarMetadata = parseMetadata(innerJar.getPath(), innerJar.getFabricModJson());
+            metadata.put(jar, jarMetadata);
+            if (jarMetadata == null || jarMetadata.getAccessWidener() == null) continue;
+            // The mod of a primary jar is made of all primary jars, so its access widener can be in any of them
+            try {
+                for (Container.InnerJar searched : jar.isPrimary() ? primaryJars : Collections.singletonList(innerJar)) {
+                    byte[] accessWidener = Container.readEntry(searched, jarMetadata.getAccessWidener());
+                    if (accessWidener == null) continue;
+                    accessWideners.put(jar, accessWidener);
+                    break;
                 }
             } catch (IOException e) {
-                LOGGER.error("Failed to check jar file:", e);
+                LOGGER.error("Failed to read accessWidener file from mod " + jarMetadata.getId(), e);
             }
         }
-        return null;
+        report.time("metadata", start);
+        return new PreparedMod(mod, extractedJars, mergedJar, metadata, accessWideners);
     }
 
-    public List<OmniLoaderSchema.Jar> filterJars(List<OmniLoaderSchema.Jar> jars, Version version, String loader) {
+    private void registerMod(PreparedMod prepared, List<ModContainer> loadedMods, StartupReport.ModReport report) {
+        Map<OmniLoaderSchema.Jar, Container.InnerJar> extractedJars = prepared.jars;
+        Path mergedJar = prepared.mergedJar;
+        LOGGER.info("Loading jars for " + prepared.mod.getMetadata().getId() + ": " + extractedJars.values().stream().map(jar -> jar.getPath().getFileName().toString()).collect(Collectors.toList())
+                + (mergedJar != null ? ", primary jars merged into " + mergedJar.getFileName() : ""));
+        ArrayList<Path> paths = new ArrayList<>();
+        if (mergedJar != null) paths.add(mergedJar);
+        else for (OmniLoaderSchema.Jar jar : extractedJars.keySet()) {
+            if (!jar.isPrimary()) continue;
+            paths.add(extractedJars.get(jar).getPath());
+            if (extractedJars.get(jar).getDeltaPath() != null) paths.add(extractedJars.get(jar).getDeltaPath());
+        }
+        if (profiler != null) for (OmniLoaderSchema.Jar jar : extractedJars.keySet()) {
+            if (!jar.isPrimary()) continue;
+            LoaderModMetadata metadata = prepared.metadata.get(jar);
+            String modId = metadata != null ? metadata.getId() : prepared.mod.getMetadata().getId();
+            profiler.addJar(modId, jar.getPath(), extractedJars.get(jar).getPath());
+            if (extractedJars.get(jar).getDeltaPath() != null) profiler.addJar(modId, jar.getPath(), extractedJars.get(jar).getDeltaPath());
+        }
+        long start = System.nanoTime();
+        if (mergedJar != null) loadJar(mergedJar);
+        for (OmniLoaderSchema.Jar jar : extractedJars.keySet()) {
+            if (mergedJar != null && jar.isPrimary()) continue;
+            loadJar(extractedJars.get(jar).getPath());
+            if (extractedJars.get(jar).getDeltaPath() != null) loadJar(extractedJars.get(jar).getDeltaPath());
+        }
+        report.time("classpath", start);
+        for (OmniLoaderSchema.Jar jar : extractedJars.keySet()) {
+            Path path = mergedJar != null && jar.isPrimary() ? mergedJar : extractedJars.get(jar).getPath();
+            ModContainer modContainer = addAsMod(path, prepared.metadata.get(jar), prepared.accessWideners.get(jar), jar.isPrimary() ? paths : Collections.singletonList(path), report);
+            if (modContainer != null) loadedMods.add(modContainer);
+        }
+    }
+
+    public static List<OmniLoaderSchema.Jar> filterJars(List<OmniLoaderSchema.Jar> jars, Version version, String loader) {
         ArrayList<OmniLoaderSchema.Jar> requiredJars = new ArrayList<>();
         for (OmniLoaderSchema.Jar jar : jars) {
             if (!jar.getLoaders().contains(loader)) continue;
@@ -108,30 +221,9 @@ public class OmniLoader implements PreLaunchEntrypoint {
         return requiredJars;
     }
 
-    private Map<OmniLoaderSchema.Jar, File> extractJars(ModContainer mod, List<OmniLoaderSchema.Jar> jars) {
-        HashMap<OmniLoaderSchema.Jar, File> extractedJars = new HashMap<>();
-        File dir = new File(loaderDir, mod.getMetadata().getId());
-        dir.mkdirs();
-        for (Path path : mod.getOrigin().getPaths()) {
-            try (JarFile jar = new JarFile(path.toString())) {
-                for (OmniLoaderSchema.Jar jarToLoad : jars) {
-                    JarEntry entry = jar.getJarEntry(jarToLoad.getPath());
-                    if (entry == null) {
-                        LOGGER.warn("Jar file " + jarToLoad.getPath() + " not found.");
-                        continue;
-                    }
-                    File file = new File(dir, entry.getName());
-                    new File(file.getParent()).mkdirs();
-                    Files.copy(jar.getInputStream(entry), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                    extractedJars.put(jarToLoad, file);
-                }
-            } catch (IOException e) {
-                LOGGER.error("Failed to load jar file:", e);
-            }
-        }
-        return extractedJars;
-    }
-
+    private VersionOverrides versionOverrides;
+    private DependencyOverrides dependencyOverrides;
+    private ClassLoadProfiler profiler;
     private Field envType;
     private Constructor<?> constructor;
     private Method addField;
@@ -163,20 +255,64 @@ public class OmniLoader implements PreLaunchEntrypoint {
         }
     }
 
-    private void loadJar(File jar) {
-        FabricLauncherBase.getLauncher().addToClassPath(jar.toPath());
+    private Method addUrlMethod;
+
+    private void loadJar(Path jar) {
+        if (jar.getFileSystem() == FileSystems.getDefault()) {
+            FabricLauncherBase.getLauncher().addToClassPath(jar);
+            return;
+        }
+        // An exploded jar is a directory in the mounted container, but Knot turns class path entries into URLs with
+        // Path#toUri, which doesn't end a directory inside a zip file system with a slash, so the class loader would
+        // try to open it as a jar. Give the class loader the directory's URL ourselves instead.
+        ClassLoader classLoader = FabricLauncherBase.getLauncher().getTargetClassLoader();
+        try {
+            if (addUrlMethod == null) addUrlMethod = findAddUrlMethod(classLoader.getClass());
+            addUrlMethod.invoke(classLoader, new URL(jar.toUri() + "/"));
+        } catch (IOException | ReflectiveOperationException e) {
+            LOGGER.error("Failed to add " + jar.toUri() + " to the class path:", e);
+        }
+    }
+
+    private static Method findAddUrlMethod(Class<?> classLoaderClass) throws NoSuchMethodException {
+        for (Class<?> clazz = classLoaderClass; clazz != null; clazz = clazz.getSuperclass()) {
+            for (String name : new String[]{"addUrlFwd", "addURL"}) {
+                try {
+                    Method method = clazz.getDeclaredMethod(name, URL.class);
+                    method.setAccessible(true);
+                    return method;
+                } catch (NoSuchMethodException ignored) {
+                }
+            }
+        }
+        throw new NoSuchMethodException("No method to add a URL to " + classLoaderClass.getName());
+    }
+
+    /**
+     * @return the parsed metadata of an inner jar, or null if it doesn't have a fabric.mod.json or it can't be parsed
+     */
+    private LoaderModMetadata parseMetadata(Path jar, byte[] fabricJson) {
+        if (fabricJson == null) return null;
+        try {
+            return ModMetadataParser.parseMetadata(new ByteArrayInputStream(fabricJson), jar.toString(), new ArrayList<>(), versionOverrides, dependencyOverrides, false);
+        } catch (ParseMetadataException e) {
+            LOGGER.error("Failed to add " + jar + " as a mod:", e);
+            return null;
+        }
     }
 
-    private ModContainer addAsMod(File jar, List<Path> paths) {
-        try (JarFile jarFile = new JarFile(jar)) {
-            JarEntry fabricJson = jarFile.getJarEntry("fabric.mod.json");
-            if (fabricJson == null) return null;
-            VersionOverrides versionOverrides = new VersionOverrides();
-            DependencyOverrides depOverrides = new DependencyOverrides(fabricLoader.getConfigDir());
-            LoaderModMetadata metadata = ModMetadataParser.parseMetadata(jarFile.getInputStream(fabricJson), jar.getPath(), new ArrayList<>(), versionOverrides, depOverrides, false);
-            ModCandidate candidate = (ModCandidate) constructor.newInstance(paths, jar.getAbsolutePath(), -1, metadata, false, Collections.emptyList());
+    /**
+     * @param accessWidener the content of the mod's access widener, or null if it doesn't have one or it couldn't be read
+     */
+    private ModContainer addAsMod(Path jar, LoaderModMetadata metadata, byte[] accessWidener, List<Path> paths, StartupReport.ModReport report) {
+        if (metadata == null) return null;
+        try {
+            long start = System.nanoTime();
+            ModCandidate candidate = (ModCandidate) constructor.newInstance(paths, jar.toAbsolutePath().toString(), -1, metadata, false, Collections.emptyList());
             addField.invoke(fabricLoader, candidate);
             ModContainerImpl modContainer = (ModContainerImpl) fabricLoader.getModContainer(metadata.getId()).get();
+            report.time("addMod", start);
+            start = System.nanoTime();
             Object entrypointStorage = entryPointStorageField.get(fabricLoader);
             Object adapterMap = adapterMapField.get(fabricLoader);
             for (String in : modContainer.getInfo().getOldInitializers()) {
@@ -188,29 +324,49 @@ public class OmniLoader implements PreLaunchEntrypoint {
                     addMethod.invoke(entrypointStorage, modContainer, key, in, adapterMap);
                 }
             }
+            report.time("entrypoints", start);
+            start = System.nanoTime();
             MinecraftGameProvider provider = (MinecraftGameProvider) fabricLoader.tryGetGameProvider();
             for (String mixinConfig : metadata.getMixinConfigs((EnvType) envType.get(provider))) {
                 Mixins.addConfigurations(mixinConfig);
             }
-            String accessWidener = modContainer.getMetadata().getAccessWidener();
-            if (accessWidener != null) {
-                Path path = modContainer.findPath(accessWidener).orElse(null);
-                if (path == null) {
-                    LOGGER.error(String.format("Missing accessWidener file %s from mod %s", accessWidener, modContainer.getMetadata().getId()));
+            report.time("mixins", start);
+            start = System.nanoTime();
+            String accessWidenerPath = modContainer.getMetadata().getAccessWidener();
+            if (accessWidenerPath != null) {
+                if (accessWidener == null) {
+                    LOGGER.error(String.format("Missing accessWidener file %s from mod %s", accessWidenerPath, modContainer.getMetadata().getId()));
                 } else {
                     AccessWidenerReader accessWidenerReader = new AccessWidenerReader(fabricLoader.getAccessWidener());
-                    try (BufferedReader reader = Files.newBufferedReader(path)) {
-                        accessWidenerReader.read(reader, FabricLauncherBase.getLauncher().getTargetNamespace());
+                    try {
+                        accessWidenerReader.read(accessWidener, FabricLauncherBase.getLauncher().getTargetNamespace());
                     } catch (Exception e) {
                         LOGGER.error("Failed to read accessWidener file from mod " + modContainer.getMetadata().getId(), e);
                     }
                 }
             }
+            report.time("accessWidener", start);
             return modContainer;
-        } catch (IllegalAccessException | InvocationTargetException | InstantiationException | IOException |
-                 ParseMetadataException e) {
+        } catch (IllegalAccessException | InvocationTargetException | InstantiationException e) {
             LOGGER.error("Failed to add " + jar + " as a mod:", e);
         }
         return null;
     }
+
+    private static class PreparedMod {
+        private final ModContainer mod;
+        private final Map<OmniLoaderSchema.Jar, Container.InnerJar> jars;
+        private final Path mergedJar;
+        private final Map<OmniLoaderSchema.Jar, LoaderModMetadata> metadata;
+        private final Map<OmniLoaderSchema.Jar, byte[]> accessWideners;
+
+        private PreparedMod(ModContainer mod, Map<OmniLoaderSchema.Jar, Container.InnerJar> jars, Path mergedJar,
+                            Map<OmniLoaderSchema.Jar, LoaderModMetadata> metadata, Map<OmniLoaderSchema.Jar, byte[]> accessWideners) {
+            this.mod = mod;
+            this.jars = jars;
+            this.mergedJar = mergedJar;
+            this.metadata = metadata;
+            this.accessWideners = accessWideners;
+        }
+    }
 }
@@ -0,0 +1,68 @@
+package dev.dediamondpro.omniloader0;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Settings of the loader, read from config.json in the omniloader0 config directory.
+ * The file is created with the defaults if it doesn't exist yet.
+ */
+public class OmniLoaderConfig {
+    private static final Logger LOGGER = LogManager.getLogger("OmniLoader");
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private static final String FILE_NAME = "config.json";
+
+    /**
+     * Whether to write startup-report.json with the time every phase took for every mod.
+     */
+    private boolean writeStartupReport = false;
+    /**
+     * Whether to merge the primary jars of a mod into a single jar that is cached per Minecraft version,
+     * so the mod adds one class path entry instead of one per partition.
+     */
+    private boolean mergeClasspath = false;
+    /**
+     * Whether to record the order the classes of the primary jars are loaded in and write it to class-profile.json
+     * when the game exits, for the minifier's --class-profile option.
+     */
+    private boolean profileClassLoading = false;
+
+    public static OmniLoaderConfig load(File dir) {
+        File file = new File(dir, FILE_NAME);
+        if (file.isFile()) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                OmniLoaderConfig config = gson.fromJson(reader, OmniLoaderConfig.class);
+                if (config != null) return config;
+            } catch (IOException | JsonParseException e) {
+                LOGGER.warn("Failed to read config, using the defaults:", e);
+            }
+            return new OmniLoaderConfig();
+        }
+        OmniLoaderConfig config = new OmniLoaderConfig();
+        try {
+            dir.mkdirs();
+            AtomicFiles.copy(new ByteArrayInputStream(gson.toJson(config).getBytes(StandardCharsets.UTF_8)), file.toPath());
+        } catch (IOException e) {
+            LOGGER.debug("Failed to write default config:", e);
+        }
+        return config;
+    }
+
+    public boolean isWriteStartupReport() {
+        return writeStartupReport;
+    }
+
+    public boolean isMergeClasspath() {
+        return mergeClasspath;
+    }
+
+    public boolean isProfileClassLoading() {
+        return profileClassLoading;
+    }
+}
@@ -1,17 +1,20 @@
 package dev.dediamondpro.omniloader0;
 
+import com.google.gson.JsonObject;
+
 import java.util.List;
 
 public class OmniLoaderSchema {
     private final int schemaVersion;
     private final List<Jar> jars;
+    private final VersionIndex versionIndex;
 
-    public OmniLoaderSchema(int schemaVersion, List<Jar> jars) {
+    public OmniLoaderSchema(int schemaVersion, List<Jar> jars, VersionIndex versionIndex) {
         this.schemaVersion = schemaVersion;
         this.jars = jars;
+        this.versionIndex = versionIndex;
     }
 
-
     public int getSchemaVersion() {
         return schemaVersion;
     }
@@ -20,17 +23,28 @@ public class OmniLoaderSchema {
         return jars;
     }
 
+    /**
+     * @return the precomputed version index, only present since schema version 1 and not for every container
+     */
+    public VersionIndex getVersionIndex() {
+        return versionIndex;
+    }
+
     public static class Jar {
         private final String path;
         private final List<String> versions;
         private final List<String> loaders;
         private final boolean isPrimary;
+        private final List<Delta> deltas;
+        private final JsonObject fabricModJson;
 
-        public Jar(String path, List<String> versions, List<String> loaders, boolean isPrimary) {
+        public Jar(String path, List<String> versions, List<String> loaders, boolean isPrimary, List<Delta> deltas, JsonObject fabricModJson) {
             this.path = path;
             this.versions = versions;
             this.loaders = loaders;
             this.isPrimary = isPrimary;
+            this.deltas = deltas;
+            this.fabricModJson = fabricModJson;
         }
 
         public String getPath() {
@@ -48,5 +62,46 @@ public class OmniLoaderSchema {
         public boolean isPrimary() {
             return isPrimary;
         }
+
+        /**
+         * @return the entries of the jar that have to be rebuilt from a base in the container, or null if there are none
+         */
+        public List<Delta> getDeltas() {
+            return deltas;
+        }
+
+        /**
+         * @return the jar's fabric.mod.json as embedded by the minifier, or null if it isn't embedded in the schema
+         */
+        public JsonObject getFabricModJson() {
+            return fabricModJson;
+        }
+    }
+
+    public static class Delta {
+        private final String name;
+        private final String base;
+        private final String patch;
+
+        public Delta(String name, String base, String patch) {
+            this.name = name;
+            this.base = base;
+            this.patch = patch;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getBase() {
+            return base;
+        }
+
+        /**
+         * @return the path of the patch to apply to the base, or null if the entry is the base itself
+         */
+        public String getPatch() {
+            return patch;
+        }
     }
 }
@@ -0,0 +1,104 @@
+package dev.dediamondpro.omniloader0;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Time spent in every phase of loading every omniloader mod, along with how much work extracting its jars took.
+ * Reported as JFR events when a recording is running, and optionally written to startup-report.json.
+ */
+public class StartupReport {
+    private static final Logger LOGGER = LogManager.getLogger("OmniLoader");
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private static final String FILE_NAME = "startup-report.json";
+
+    private final String minecraftVersion;
+    private final ArrayList<ModReport> mods = new ArrayList<>();
+    private double totalMillis;
+
+    public StartupReport(String minecraftVersion) {
+        this.minecraftVersion = minecraftVersion;
+    }
+
+    public ModReport addMod(String id) {
+        ModReport mod = new ModReport(id);
+        mods.add(mod);
+        return mod;
+    }
+
+    /**
+     * Finishes the report once all mods are loaded and emits it as JFR events.
+     */
+    public void finish(long startNanos) {
+        totalMillis = toMillis(System.nanoTime() - startNanos);
+        JfrEvents events = JfrEvents.get();
+        for (ModReport mod : mods) {
+            for (Map.Entry<String, Long> phase : mod.phaseNanos.entrySet()) {
+                mod.phaseMillis.put(phase.getKey(), toMillis(phase.getValue()));
+                if (events != null) events.phase(mod.id, phase.getKey(), phase.getValue());
+            }
+            if (events != null) events.mod(mod.id, mod.jarsOpened, mod.jarsExtracted, mod.cacheHits, mod.bytesExtracted);
+        }
+    }
+
+    public void save(File dir) {
+        try {
+            AtomicFiles.copy(new ByteArrayInputStream(gson.toJson(this).getBytes(StandardCharsets.UTF_8)), new File(dir, FILE_NAME).toPath());
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write startup report:", e);
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    /**
+     * Timings and counters of a single mod. Only used by one thread at a time: the one preparing the mod, then the one registering it.
+     */
+    public static class ModReport {
+        private final String id;
+        private final transient LinkedHashMap<String, Long> phaseNanos = new LinkedHashMap<>();
+        private final LinkedHashMap<String, Double> phaseMillis = new LinkedHashMap<>();
+        private int jarsOpened = 0;
+        private int jarsExtracted = 0;
+        private int cacheHits = 0;
+        private long bytesExtracted = 0;
+
+        private ModReport(String id) {
+            this.id = id;
+        }
+
+        /**
+         * Adds the time since startNanos to the phase, phases that happen more than once are summed.
+         */
+        public void time(String phase, long startNanos) {
+            long nanos = System.nanoTime() - startNanos;
+            Long previous = phaseNanos.get(phase);
+            phaseNanos.put(phase, previous == null ? nanos : previous + nanos);
+        }
+
+        public void jarOpened() {
+            jarsOpened++;
+        }
+
+        public void jarExtracted(long bytes) {
+            jarsExtracted++;
+            bytesExtracted += bytes;
+        }
+
+        public void cacheHit() {
+            cacheHits++;
+        }
+    }
+}
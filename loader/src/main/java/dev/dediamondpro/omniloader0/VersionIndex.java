@@ -0,0 +1,63 @@
+package dev.dediamondpro.omniloader0;
+
+import net.fabricmc.loader.api.SemanticVersion;
+import net.fabricmc.loader.api.Version;
+import net.fabricmc.loader.api.VersionParsingException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mapping from Minecraft versions to the jars of a schema that is precomputed by the minifier.
+ * The sorted boundaries split all versions into ranges: before the first boundary, each boundary itself and each gap
+ * between two boundaries, so range 2i + 1 is boundary i and range 2i is the gap before it.
+ * Every range lists the indices of the jars that should be loaded for versions in it.
+ */
+public class VersionIndex {
+    private static final Logger LOGGER = LogManager.getLogger("OmniLoader");
+
+    private final List<String> boundaries;
+    private final List<List<Integer>> ranges;
+
+    public VersionIndex(List<String> boundaries, List<List<Integer>> ranges) {
+        this.boundaries = boundaries;
+        this.ranges = ranges;
+    }
+
+    /**
+     * @return the jars for the version and loader, or null if the index can't be used and the predicates have to be tested instead
+     */
+    public List<OmniLoaderSchema.Jar> resolve(List<OmniLoaderSchema.Jar> jars, Version version, String loader) {
+        if (!(version instanceof SemanticVersion) || boundaries == null || ranges == null || ranges.size() != boundaries.size() * 2 + 1) {
+            return null;
+        }
+        int low = 0;
+        int high = boundaries.size() - 1;
+        int range = -1;
+        try {
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int result = version.compareTo(SemanticVersion.parse(boundaries.get(middle)));
+                if (result == 0) {
+                    range = middle * 2 + 1;
+                    break;
+                }
+                if (result > 0) low = middle + 1;
+                else high = middle - 1;
+            }
+        } catch (VersionParsingException e) {
+            LOGGER.error("Failed to parse version index boundary:", e);
+            return null;
+        }
+        if (range == -1) range = low * 2;
+        ArrayList<OmniLoaderSchema.Jar> requiredJars = new ArrayList<>();
+        for (int index : ranges.get(range)) {
+            if (index < 0 || index >= jars.size()) return null;
+            OmniLoaderSchema.Jar jar = jars.get(index);
+            if (jar.getLoaders().contains(loader)) requiredJars.add(jar);
+        }
+        return requiredJars;
+    }
+}
@@ -2,6 +2,7 @@ rootProject.name = "OmniLoader"
 
 include("loader")
 include("jar-minifier")
+include("benchmarks")
 
 pluginManagement {
     repositories {